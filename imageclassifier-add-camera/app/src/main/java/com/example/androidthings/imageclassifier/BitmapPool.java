@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+/**
+ * A bounded pool of mutable bitmaps, so that the preprocessing pipeline can keep reusing
+ * pixel memory instead of allocating a Bitmap per frame.
+ *
+ * Bitmaps are matched on width, height and config. Released bitmaps are kept in least
+ * recently released order, and the oldest ones are recycled once the pool holds more than
+ * its byte budget. The pool is thread safe.
+ */
+public class BitmapPool {
+    private final long mMaxBytes;
+    /** Free bitmaps, the least recently released first. */
+    private final ArrayList<Bitmap> mFree = new ArrayList<>();
+    private long mBytes;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * @param maxBytes maximum pixel memory held by the free bitmaps of the pool.
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Take a free bitmap of the given size and config out of the pool, or create one if there
+     * is none. The content of a reused bitmap is undefined.
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        synchronized (this) {
+            // Most recently released first, it is the most likely to be warm in the caches
+            for (int i = mFree.size() - 1; i >= 0; i--) {
+                final Bitmap bitmap = mFree.get(i);
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                        && bitmap.getConfig() == config) {
+                    mFree.remove(i);
+                    mBytes -= bitmap.getAllocationByteCount();
+                    mHits++;
+                    return bitmap;
+                }
+            }
+            mMisses++;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Give a bitmap back to the pool. The caller must not use it anymore. Bitmaps that are
+     * immutable or recycled are ignored.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        synchronized (this) {
+            if (mFree.contains(bitmap)) {
+                return;
+            }
+            mFree.add(bitmap);
+            mBytes += bitmap.getAllocationByteCount();
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * Recycle the least recently released bitmaps until the pool holds at most
+     * {@code maxBytes}.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        while (mBytes > maxBytes && !mFree.isEmpty()) {
+            final Bitmap evicted = mFree.remove(0);
+            mBytes -= evicted.getAllocationByteCount();
+            evicted.recycle();
+            mEvictions++;
+        }
+    }
+
+    /**
+     * Recycle all the free bitmaps.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /** Pixel memory held by the free bitmaps. */
+    public synchronized long getSizeBytes() {
+        return mBytes;
+    }
+
+    /** Number of acquisitions served by a pooled bitmap. */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /** Number of acquisitions that had to create a bitmap. */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /** Number of bitmaps recycled to stay within the byte budget. */
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+}
@@ -23,15 +23,18 @@ import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.ImageReader;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
 import android.util.Size;
+import android.view.Surface;
 
 import java.util.Collections;
 
@@ -42,6 +45,10 @@ public class CameraHandler {
     private CameraDevice mCameraDevice;
     private CameraCaptureSession mCaptureSession;
     private boolean initialized;
+    private volatile boolean mCaptureInProgress;
+    private volatile boolean mStreaming;
+    /** Whether image timestamps are on the elapsed realtime clock rather than uptime. */
+    private volatile boolean mRealtimeTimestamps;
 
     /**
      * An {@link ImageReader} that handles still image capture.
@@ -61,12 +68,27 @@ public class CameraHandler {
     }
 
     /**
-     * Initialize the camera device
+     * Initialize the camera device, capturing JPEG images
      */
-    @SuppressLint("MissingPermission")
     public void initializeCamera(Context context, int previewWidth, int previewHeight,
                                  Handler backgroundHandler,
                                  ImageReader.OnImageAvailableListener imageAvailableListener) {
+        initializeCamera(context, previewWidth, previewHeight, ImageFormat.JPEG, MAX_IMAGES,
+                backgroundHandler, imageAvailableListener);
+    }
+
+    /**
+     * Initialize the camera device
+     *
+     * @param imageFormat format of the captured images, {@link ImageFormat#JPEG} or
+     *                    {@link ImageFormat#YUV_420_888}.
+     * @param maxImages   number of images the listener may hold at the same time, see
+     *                    {@link ImageRing#getRequiredMaxImages()}.
+     */
+    @SuppressLint("MissingPermission")
+    public void initializeCamera(Context context, int previewWidth, int previewHeight,
+                                 int imageFormat, int maxImages, Handler backgroundHandler,
+                                 final ImageReader.OnImageAvailableListener listener) {
         if (initialized) {
             throw new IllegalStateException(
                     "CameraHandler is already initialized or is initializing");
@@ -86,11 +108,26 @@ public class CameraHandler {
             return;
         }
         Log.d(TAG, "Using camera id " + camIds[0]);
+        try {
+            Integer source = manager.getCameraCharacteristics(camIds[0])
+                    .get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            mRealtimeTimestamps = source != null
+                    && source == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        } catch (CameraAccessException e) {
+            Log.w(TAG, "Cannot get the timestamp source of the camera", e);
+        }
 
         // Initialize the image processor
-        mImageReader = ImageReader.newInstance(previewWidth, previewHeight, ImageFormat.JPEG,
-                MAX_IMAGES);
-        mImageReader.setOnImageAvailableListener(imageAvailableListener, backgroundHandler);
+        mImageReader = ImageReader.newInstance(previewWidth, previewHeight, imageFormat,
+                maxImages);
+        mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                listener.onImageAvailable(reader);
+                // Only once the listener holds the image, so that it is always accounted for
+                mCaptureInProgress = false;
+            }
+        }, backgroundHandler);
 
         // Open the camera resource
         try {
@@ -108,17 +145,89 @@ public class CameraHandler {
             Log.w(TAG, "Cannot capture image. Camera not initialized.");
             return;
         }
+        if (mStreaming) {
+            Log.w(TAG, "Cannot capture a still image while streaming.");
+            return;
+        }
         // Create a CameraCaptureSession for capturing still images.
         try {
+            mCaptureInProgress = true;
             mCameraDevice.createCaptureSession(
                     Collections.singletonList(mImageReader.getSurface()),
                     mSessionCallback,
                     null);
         } catch (CameraAccessException cae) {
+            mCaptureInProgress = false;
             Log.e(TAG, "Cannot create camera capture session", cae);
         }
     }
 
+    /**
+     * Start delivering frames to the image listener continuously. A single capture session is
+     * configured with a repeating request, and kept open until {@link #stopStreaming()}.
+     */
+    public void startStreaming() {
+        if (mCameraDevice == null) {
+            Log.w(TAG, "Cannot start streaming. Camera not initialized.");
+            return;
+        }
+        if (mStreaming || mCaptureInProgress) {
+            Log.w(TAG, "Cannot start streaming, the camera is busy.");
+            return;
+        }
+        try {
+            mStreaming = true;
+            mCameraDevice.createCaptureSession(
+                    Collections.singletonList(mImageReader.getSurface()),
+                    mStreamingSessionCallback,
+                    null);
+        } catch (CameraAccessException cae) {
+            mStreaming = false;
+            Log.e(TAG, "Cannot create camera streaming session", cae);
+        }
+    }
+
+    /**
+     * Stop the repeating request started by {@link #startStreaming()} and close its session.
+     */
+    public void stopStreaming() {
+        if (!mStreaming) {
+            return;
+        }
+        mStreaming = false;
+        if (mCaptureSession != null) {
+            try {
+                mCaptureSession.stopRepeating();
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.w(TAG, "Could not stop the repeating request", e);
+            }
+        }
+        closeCaptureSession();
+    }
+
+    /**
+     * @return {@code true} between {@link #startStreaming()} and {@link #stopStreaming()}.
+     */
+    public boolean isStreaming() {
+        return mStreaming;
+    }
+
+    /**
+     * @return {@code true} between {@link #takePicture()} and the image listener returning
+     * from the captured image, or the capture failing.
+     */
+    public boolean isCaptureInProgress() {
+        return mCaptureInProgress;
+    }
+
+    /**
+     * @return the current time on the clock of the image timestamps, so that the age of a
+     * frame is the difference with {@link android.media.Image#getTimestamp()}.
+     */
+    public long getTimestampNanos() {
+        return mRealtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : System.nanoTime();
+    }
+
     /**
      * Execute a new capture request within the active session
      */
@@ -131,6 +240,7 @@ public class CameraHandler {
             Log.d(TAG, "Capture request created.");
             mCaptureSession.capture(captureBuilder.build(), mCaptureCallback, null);
         } catch (CameraAccessException cae) {
+            mCaptureInProgress = false;
             Log.e(TAG, "Cannot trigger a capture request");
         }
     }
@@ -151,6 +261,7 @@ public class CameraHandler {
      */
     public void shutDown() {
         try {
+            mStreaming = false;
             closeCaptureSession();
             if (mCameraDevice != null) {
                 mCameraDevice.close();
@@ -158,6 +269,7 @@ public class CameraHandler {
             mImageReader.close();
         } finally {
             initialized = false;
+            mCaptureInProgress = false;
         }
     }
 
@@ -237,6 +349,7 @@ public class CameraHandler {
                 public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
                     // The camera is already closed
                     if (mCameraDevice == null) {
+                        mCaptureInProgress = false;
                         return;
                     }
                     // When the session is ready, we start capture.
@@ -245,10 +358,44 @@ public class CameraHandler {
                 }
                 @Override
                 public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                    mCaptureInProgress = false;
                     Log.w(TAG, "Failed to configure camera");
                 }
             };
 
+    /**
+     * Callback handling the state of the streaming session
+     */
+    private CameraCaptureSession.StateCallback mStreamingSessionCallback =
+            new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
+                    // The camera is already closed, or streaming was stopped meanwhile
+                    if (mCameraDevice == null || !mStreaming) {
+                        cameraCaptureSession.close();
+                        return;
+                    }
+                    mCaptureSession = cameraCaptureSession;
+                    try {
+                        final CaptureRequest.Builder builder =
+                                mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                        builder.addTarget(mImageReader.getSurface());
+                        builder.set(CaptureRequest.CONTROL_AE_MODE,
+                                CaptureRequest.CONTROL_AE_MODE_ON);
+                        mCaptureSession.setRepeatingRequest(builder.build(), null, null);
+                        Log.d(TAG, "Streaming started.");
+                    } catch (CameraAccessException cae) {
+                        Log.e(TAG, "Cannot start the repeating request", cae);
+                        stopStreaming();
+                    }
+                }
+                @Override
+                public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                    mStreaming = false;
+                    Log.w(TAG, "Failed to configure camera for streaming");
+                }
+            };
+
     /**
      * Callback handling capture session events
      */
@@ -264,10 +411,27 @@ public class CameraHandler {
                 public void onCaptureCompleted(@NonNull CameraCaptureSession session,
                                                @NonNull CaptureRequest request,
                                                @NonNull TotalCaptureResult result) {
+                    // Still in progress until the image reaches the listener
                     session.close();
                     mCaptureSession = null;
                     Log.d(TAG, "CaptureSession closed");
                 }
+                @Override
+                public void onCaptureBufferLost(@NonNull CameraCaptureSession session,
+                                                @NonNull CaptureRequest request,
+                                                @NonNull Surface target, long frameNumber) {
+                    mCaptureInProgress = false;
+                    Log.w(TAG, "Capture buffer lost");
+                }
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                            @NonNull CaptureRequest request,
+                                            @NonNull CaptureFailure failure) {
+                    session.close();
+                    mCaptureSession = null;
+                    mCaptureInProgress = false;
+                    Log.w(TAG, "Capture failed, reason " + failure.getReason());
+                }
             };
 
 }
\ No newline at end of file
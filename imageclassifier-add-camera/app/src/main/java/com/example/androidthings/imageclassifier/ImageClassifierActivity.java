@@ -18,27 +18,53 @@ package com.example.androidthings.imageclassifier;
 import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.media.ImageReader;
+import android.graphics.ImageFormat;
+import android.media.Image;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.WindowManager;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.androidthings.imageclassifier.classifier.ClassificationEngine;
+import com.example.androidthings.imageclassifier.classifier.ClassifierConfig;
+import com.example.androidthings.imageclassifier.classifier.HandlerExecutor;
+import com.example.androidthings.imageclassifier.classifier.LogcatTracer;
+import com.example.androidthings.imageclassifier.classifier.ModelAssets;
+import com.example.androidthings.imageclassifier.classifier.ModelRegistry;
 import com.example.androidthings.imageclassifier.classifier.Recognition;
-import com.example.androidthings.imageclassifier.classifier.TensorFlowHelper;
+import com.example.androidthings.imageclassifier.classifier.ResultCache;
+import com.example.androidthings.imageclassifier.classifier.ResultLog;
+import com.example.androidthings.imageclassifier.classifier.TfLiteBackend;
+import com.example.androidthings.imageclassifier.metrics.Gauge;
+import com.example.androidthings.imageclassifier.metrics.Histogram;
+import com.example.androidthings.imageclassifier.metrics.MetricsRegistry;
+import com.example.androidthings.imageclassifier.metrics.PrometheusFormat;
 import com.google.android.things.contrib.driver.button.ButtonInputDriver;
 import com.google.android.things.contrib.driver.rainbowhat.RainbowHat;
 
-import org.tensorflow.lite.Interpreter;
-
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ImageClassifierActivity extends Activity {
     private static final String TAG = "ImageClassifierActivity";
@@ -46,111 +72,636 @@ public class ImageClassifierActivity extends Activity {
     /** Camera image capture size */
     private static final int PREVIEW_IMAGE_WIDTH = 640;
     private static final int PREVIEW_IMAGE_HEIGHT = 480;
+    /** Camera image format, YUV avoids a JPEG encode and decode per frame */
+    private static final int CAPTURE_FORMAT = ImageFormat.YUV_420_888;
+    /** Camera frames waiting for the classifier, and what to do when there are too many */
+    private static final int FRAME_RING_SIZE = 2;
+    private static final int FRAME_OVERFLOW_POLICY = ImageRing.DROP_OLDEST;
+    /** Frames queued ahead of each stage of the pipeline */
+    private static final int PREPROCESS_QUEUE_SIZE = 1;
+    private static final int INFER_QUEUE_SIZE = 1;
+    private static final int PUBLISH_QUEUE_SIZE = 2;
+    /**
+     * Model inputs circulating between the stages: one per queue slot past preprocessing,
+     * plus one in each of the three stages
+     */
+    private static final int FRAME_COUNT = INFER_QUEUE_SIZE + PUBLISH_QUEUE_SIZE + 3;
+    /** Longest wait for the pipeline stages to stop on exit */
+    private static final long PIPELINE_STOP_TIMEOUT_MS = 1000;
+    /**
+     * While streaming, a frame is only classified when this fraction of its thumbnail changed
+     * by this much luminance, or when no frame was for this long
+     */
+    private static final int MOTION_LUMA_THRESHOLD = 16;
+    private static final float MOTION_AREA_THRESHOLD = 0.02f;
+    private static final long MOTION_KEEP_ALIVE_MS = 10000;
+    /** Pixel memory kept around by the bitmap pool for reuse */
+    private static final long BITMAP_POOL_BYTES = 4 * 1024 * 1024;
     /** Image dimensions required by TF model */
     private static final int TF_INPUT_IMAGE_WIDTH = 224;
     private static final int TF_INPUT_IMAGE_HEIGHT = 224;
-    /** Dimensions of model inputs. */
-    private static final int DIM_BATCH_SIZE = 1;
-    private static final int DIM_PIXEL_SIZE = 3;
-    /** TF model asset files */
-    private static final String LABELS_FILE = "labels.txt";
+    /** Number of results to show, and minimum confidence for a result to be shown */
+    private static final int RESULTS_TO_SHOW = 3;
+    private static final float MIN_CONFIDENCE = 0f;
+    /**
+     * Results of the last distinct images, reused for a camera frame whose perceptual hash
+     * differs by at most this many bits out of 64, until they are this old
+     */
+    private static final int RESULT_CACHE_SIZE = 8;
+    private static final int RESULT_CACHE_MAX_DISTANCE = 4;
+    private static final long RESULT_CACHE_TTL_MS = 5000;
+    /** Trace one inference out of this many when the ImageRecognition log tag is enabled */
+    private static final int TRACE_SAMPLE_INTERVAL = 1;
+    /**
+     * Threads per inference, timed at startup by default. NNAPI is off by default since the
+     * boards without a neural network accelerator only ship its slower reference CPU path.
+     */
+    private static final int NUM_THREADS = ClassifierConfig.NUM_THREADS_CALIBRATE;
+    private static final boolean USE_NNAPI = false;
+    /** Inferences run on a blank image at startup, so that the first photo is not slower */
+    private static final int WARMUP_RUNS = 3;
+    /** Longest wait for the classifier to warm up during startup, or for startup on exit */
+    private static final long STARTUP_TIMEOUT_MS = 30000;
+    /**
+     * TF model asset files. Any other quantized model in the assets taking the same input
+     * size and labels can be switched to at runtime.
+     */
+    private static final String LABEL_TABLE_FILE = "labels.bin";
     private static final String MODEL_FILE = "mobilenet_quant_v1_224.tflite";
+    /**
+     * Loopback port of the status endpoint, reached from a workstation after
+     * `adb forward tcp:8080 tcp:8080`, and number of recent results it shows
+     */
+    private static final int STATUS_PORT = 8080;
+    private static final int RESULT_LOG_SIZE = 16;
 
     private ButtonInputDriver mButtonDriver;
-    private boolean mProcessing;
+    private ButtonInputDriver mStreamButtonDriver;
+    private ButtonInputDriver mModelButtonDriver;
 
     private ImageView mImage;
     private TextView mResultText;
 
-    private Interpreter mTensorFlowLite;
-    private List<String> mLabels;
+    private ModelRegistry mClassifier;
+    /** Model being switched to, {@code null} when no switch is in progress */
+    private String mPendingModel;
     private CameraHandler mCameraHandler;
     private ImagePreprocessor mImagePreprocessor;
+    private BitmapPool mBitmapPool;
+    private ImageRing mImageRing;
+    private MotionGate mMotionGate;
+    /** Whether the motion gate saw the previous frame, only used by the preprocess stage */
+    private boolean mGateStreaming;
+    private HandlerThread mCaptureThread;
+    private Handler mCaptureHandler;
+    /** Moves the frames waiting in the ring once the pipeline has room for them */
+    private final Runnable mFeedPipeline = new Runnable() {
+        @Override
+        public void run() {
+            feedPipeline();
+        }
+    };
+    /** Set by the capture thread while a frame is out of the ring but not in the pipeline */
+    private volatile boolean mFeedingFrame;
+    private Pipeline<Image> mPipeline;
+    /** Results posted by the publish stage that the main thread has not shown yet */
+    private final AtomicInteger mPendingResults = new AtomicInteger();
+    private final BlockingQueue<Frame> mFreeFrames = new ArrayBlockingQueue<>(FRAME_COUNT);
+    /** Pixels of the preview being rendered, only used by the publish stage */
+    private final int[] mPreviewPixels = new int[TF_INPUT_IMAGE_WIDTH * TF_INPUT_IMAGE_HEIGHT];
+    /** Bitmap of the image view, given back to the pool once replaced */
+    private Bitmap mShownPreview;
+    private final ImageHash mImageHash = new ImageHash(
+            TF_INPUT_IMAGE_WIDTH, TF_INPUT_IMAGE_HEIGHT, ImageHash.DIFFERENCE);
+    private final ResultCache mResultCache = new ResultCache(RESULT_CACHE_SIZE,
+            RESULT_CACHE_MAX_DISTANCE, RESULT_CACHE_TTL_MS, TimeUnit.MILLISECONDS);
+    /** Model whose results the cache holds, only used by the infer stage */
+    private String mCacheModel;
 
     /**
-     * Initialize the classifier that will be used to process images.
+     * Latency of every step a frame goes through, in nanoseconds: from the sensor to the
+     * pipeline, from the publish stage to the screen, and from the sensor to the screen.
+     * The stages and the classifier record their own steps in the same registry.
+     */
+    private final MetricsRegistry mMetrics = new MetricsRegistry();
+    private final Histogram mCaptureTime = mMetrics.histogram("camera_capture");
+    private final Histogram mPublishTime = mMetrics.histogram("ui_publish");
+    private final Histogram mFrameLatency = mMetrics.histogram("frame_latency");
+    /** Results of the last frames, added by the publish stage */
+    private final ResultLog mResultLog = new ResultLog(RESULT_LOG_SIZE);
+    private StatusServer mStatusServer;
+
+    /** Created with the activity, so that the trace starts as early as possible */
+    private final StartupTrace mStartupTrace = new StartupTrace();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private ExecutorService mStartupExecutor;
+    /** Set on the main thread once every startup task is over */
+    private volatile boolean mStartupComplete;
+    private boolean mFirstResultTraced;
+
+    /**
+     * A camera frame converted into the model input, on its way from the preprocess stage to
+     * the publish stage. Frames are allocated once and recycled.
+     */
+    private static class Frame {
+        final ByteBuffer mInput;
+        /** Sensor timestamp of the camera frame, on the clock of the camera handler */
+        long mTimestamp;
+        long mHash;
+        Collection<Recognition> mResults;
+        /** Model that produced the results, and whether they were reused from the cache */
+        String mModel;
+        boolean mCached;
+
+        Frame(int width, int height) {
+            mInput = ByteBuffer.allocateDirect(width * height * 3);
+            mInput.order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /** The results are read from the future of the request instead. */
+    private static final ClassificationEngine.Callback IGNORE_RESULTS =
+            new ClassificationEngine.Callback() {
+                @Override
+                public void onClassificationComplete(Collection<Recognition> results) {
+                }
+            };
+
+    /**
+     * Initialize the classifier that will be used to process images. Every model found in
+     * the assets is registered, and the default one is loaded in the background.
      */
     private void initClassifier() {
+        mClassifier = new ModelRegistry(new HandlerExecutor(mMainHandler));
+        mClassifier.setMetrics(mMetrics);
+        if (LogcatTracer.isEnabled()) {
+            mClassifier.setTracer(new LogcatTracer(TRACE_SAMPLE_INTERVAL));
+        }
+        List<String> models;
         try {
-            mTensorFlowLite = new Interpreter(TensorFlowHelper.loadModelFile(this, MODEL_FILE));
-            mLabels = TensorFlowHelper.readLabels(this, LABELS_FILE);
+            models = ModelAssets.listModels(this);
         } catch (IOException e) {
-            Log.w(TAG, "Unable to initialize TensorFlow Lite.", e);
+            Log.w(TAG, "Unable to list the models, using " + MODEL_FILE, e);
+            models = Collections.singletonList(MODEL_FILE);
+        }
+        if (!models.contains(MODEL_FILE)) {
+            // Registered anyway, so that its absence shows as a failure to load it
+            models = new ArrayList<>(models);
+            models.add(0, MODEL_FILE);
         }
+        for (final String model : models) {
+            mClassifier.register(model, new ModelRegistry.Loader() {
+                @Override
+                public ClassificationEngine load() throws IOException {
+                    return createEngine(model);
+                }
+            });
+        }
+        mClassifier.activate(MODEL_FILE, mModelListener);
     }
 
     /**
-     * Clean up the resources used by the classifier.
+     * Map a model and its labels, and start an engine running it. Called on the model
+     * loading thread. The interpreter is created, calibrated and warmed up on the worker
+     * thread of the engine.
      */
-    private void destroyClassifier() {
-        mTensorFlowLite.close();
+    private ClassificationEngine createEngine(String modelFile) throws IOException {
+        // Only the model loaded at startup shows in the startup trace
+        boolean traced = !mStartupComplete;
+        StartupTrace.Phase phase = traced ? mStartupTrace.begin("model mapping") : null;
+        MappedByteBuffer model = ModelAssets.loadModelFile(this, modelFile);
+        if (traced) {
+            phase.end();
+            phase = mStartupTrace.begin("label parsing");
+        }
+        List<String> labels = ModelAssets.loadLabelTable(this, LABEL_TABLE_FILE);
+        if (traced) {
+            phase.end();
+        }
+        ClassifierConfig config = new ClassifierConfig.Builder()
+                .setInputSize(TF_INPUT_IMAGE_WIDTH, TF_INPUT_IMAGE_HEIGHT)
+                .setMaxResults(RESULTS_TO_SHOW)
+                .setMinConfidence(MIN_CONFIDENCE)
+                .setNumThreads(NUM_THREADS)
+                .setUseNnapi(USE_NNAPI)
+                .setWarmupRuns(WARMUP_RUNS)
+                .build();
+        return new ClassificationEngine(
+                new TfLiteBackend.Factory(model, config), labels, config, null);
     }
 
     /**
-     * Process an image and identify what is in it. When done, the method
-     * {@link #onPhotoRecognitionReady(Collection)} must be called with the results of
-     * the image recognition process.
-     *
-     * @param image Bitmap containing the image to be classified. The image can be
-     *              of any size, but preprocessing might occur to resize it to the
-     *              format expected by the classification process, which can be time
-     *              and power consuming.
+     * Reports model switches on the main thread.
      */
-    private void doRecognize(Bitmap image) {
-        // Allocate space for the inference results
-        byte[][] confidencePerLabel = new byte[1][mLabels.size()];
-        // Allocate buffer for image pixels.
-        int[] intValues = new int[TF_INPUT_IMAGE_WIDTH * TF_INPUT_IMAGE_HEIGHT];
-        ByteBuffer imgData = ByteBuffer.allocateDirect(
-                DIM_BATCH_SIZE * TF_INPUT_IMAGE_WIDTH * TF_INPUT_IMAGE_HEIGHT * DIM_PIXEL_SIZE);
-        imgData.order(ByteOrder.nativeOrder());
+    private final ModelRegistry.Listener mModelListener = new ModelRegistry.Listener() {
+        @Override
+        public void onModelActivated(String name) {
+            if (name.equals(mPendingModel)) {
+                mPendingModel = null;
+                updateStatus("Using model " + name);
+            }
+        }
 
-        // Read image data into buffer formatted for the TensorFlow model
-        TensorFlowHelper.convertBitmapToByteBuffer(image, intValues, imgData);
+        @Override
+        public void onModelFailed(String name, Exception error) {
+            if (name.equals(mPendingModel)) {
+                mPendingModel = null;
+            }
+            Log.w(TAG, "Unable to initialize TensorFlow Lite.", error);
+            updateStatus("Unable to load model " + name);
+        }
+    };
 
-        // Run inference on the network with the image bytes in imgData as input,
-        // storing results on the confidencePerLabel array.
-        mTensorFlowLite.run(imgData, confidencePerLabel);
+    /**
+     * Load the model following the active one in the assets, and swap it in once warmed up.
+     * Meanwhile the active model keeps classifying the photos.
+     */
+    private void switchModel() {
+        List<String> models = mClassifier.getModelNames();
+        int next = (models.indexOf(mClassifier.getActiveModel()) + 1) % models.size();
+        if (models.get(next).equals(mClassifier.getActiveModel())) {
+            updateStatus("No other model in the assets");
+            return;
+        }
+        mPendingModel = models.get(next);
+        updateStatus("Switching to model " + mPendingModel);
+        mClassifier.activate(mPendingModel, mModelListener);
+    }
 
-        // Get the results with the highest confidence and map them to their labels
-        Collection<Recognition> results = TensorFlowHelper.getBestResults(confidencePerLabel, mLabels);
-        // Report the results with the highest confidence
-        onPhotoRecognitionReady(results);
+    /**
+     * Wait for the classifier to have run its warm-up inferences, so that startup only
+     * completes once the first photo can be classified at full speed.
+     */
+    private void awaitClassifierReady() {
+        if (mClassifier == null) {
+            return;
+        }
+        StartupTrace.Phase phase = mStartupTrace.begin("classifier warm-up");
+        try {
+            if (mClassifier.awaitReady(STARTUP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            if (mClassifier.getFailure() != null) {
+                Log.w(TAG, "No model could be loaded", mClassifier.getFailure());
+            } else {
+                Log.w(TAG, "Classifier still warming up after " + STARTUP_TIMEOUT_MS + "ms");
+            }
+        } catch (InterruptedException e) {
+            // Destroyed during startup
+            Thread.currentThread().interrupt();
+        } finally {
+            phase.end();
+        }
     }
 
     /**
-     * Initialize the camera that will be used to capture images.
+     * Clean up the resources used by the classifier.
+     */
+    private void destroyClassifier() {
+        Log.d(TAG, "Classifier sessions: " + mClassifier.getSessionStats());
+        Log.d(TAG, "Result cache hits " + mResultCache.getHitCount()
+                + ", misses " + mResultCache.getMissCount()
+                + ", evictions " + mResultCache.getEvictionCount()
+                + ", expired " + mResultCache.getExpiredCount());
+        mClassifier.close();
+    }
+
+    /**
+     * Process an image and identify what is in it. Runs on the infer stage of the pipeline,
+     * which waits for the classifier to be done before taking the next frame. The publish
+     * stage then hands the results to {@link #onPhotoRecognitionReady(Bitmap, Collection)}.
+     *
+     * A frame that looks like one classified recently reuses its results without running the
+     * model again, which is most frames when the camera watches a still scene.
+     *
+     * @param frame Model input produced by the {@link ImagePreprocessor}: the image already
+     *              cropped and scaled to the format expected by the classification
+     *              process.
+     */
+    private void doRecognize(Frame frame) throws InterruptedException {
+        String active = mClassifier.getActiveModel();
+        if (active != null && !active.equals(mCacheModel)) {
+            // The results of the previous model no longer apply
+            mResultCache.clear();
+            mCacheModel = active;
+        }
+        String model = mCacheModel;
+        Collection<Recognition> results = mResultCache.get(frame.mHash);
+        frame.mCached = results != null;
+        if (results == null) {
+            // A swap may happen meanwhile, the request tells which model ran it
+            ModelRegistry.Classification request =
+                    mClassifier.classify(frame.mInput, IGNORE_RESULTS);
+            model = request.getModel();
+            try {
+                results = request.get();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Classification failed", e.getCause());
+            }
+            if (results != null && model.equals(mCacheModel)) {
+                mResultCache.put(frame.mHash, results);
+            }
+        }
+        frame.mResults = results;
+        frame.mModel = model;
+    }
+
+    /**
+     * Initialize the camera that will be used to capture images, and the pipeline classifying
+     * them. Frames are captured on a thread of their own, and go through the preprocess,
+     * infer and publish stages, each on its own thread, so that the conversion of a frame
+     * overlaps the classification of the previous one.
      */
     private void initCamera() {
+        mBitmapPool = new BitmapPool(BITMAP_POOL_BYTES);
         mImagePreprocessor = new ImagePreprocessor(PREVIEW_IMAGE_WIDTH, PREVIEW_IMAGE_HEIGHT,
-                TF_INPUT_IMAGE_WIDTH, TF_INPUT_IMAGE_HEIGHT);
+                TF_INPUT_IMAGE_WIDTH, TF_INPUT_IMAGE_HEIGHT, mBitmapPool);
+        mImagePreprocessor.setMetrics(mMetrics);
+        mMotionGate = new MotionGate(PREVIEW_IMAGE_WIDTH, PREVIEW_IMAGE_HEIGHT,
+                MOTION_LUMA_THRESHOLD, MOTION_AREA_THRESHOLD,
+                MOTION_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mFreeFrames.add(new Frame(TF_INPUT_IMAGE_WIDTH, TF_INPUT_IMAGE_HEIGHT));
+        }
+        mCaptureThread = new HandlerThread("capture");
+        mCaptureThread.start();
+        mCaptureHandler = new Handler(mCaptureThread.getLooper());
+        initPipeline();
+        mImageRing = new ImageRing(FRAME_RING_SIZE, FRAME_OVERFLOW_POLICY,
+                new ImageRing.Listener() {
+                    @Override
+                    public void onFrameAvailable(ImageRing ring) {
+                        feedPipeline();
+                    }
+                });
+        initMetrics();
         mCameraHandler = CameraHandler.getInstance();
+        // Frames queued for preprocessing and the one being preprocessed are still open
         mCameraHandler.initializeCamera(this,
-                PREVIEW_IMAGE_WIDTH, PREVIEW_IMAGE_HEIGHT, null,
-                new ImageReader.OnImageAvailableListener() {
+                PREVIEW_IMAGE_WIDTH, PREVIEW_IMAGE_HEIGHT, CAPTURE_FORMAT,
+                mImageRing.getRequiredMaxImages() + PREPROCESS_QUEUE_SIZE + 1,
+                mCaptureHandler, mImageRing);
+    }
+
+    private void initPipeline() {
+        mPipeline = new Pipeline<>(TAG);
+        mPipeline.begin("preprocess", PREPROCESS_QUEUE_SIZE,
+                new Pipeline.Processor<Image, Frame>() {
+                    @Override
+                    public Frame process(Image image) {
+                        // Taking the image made room in the queue, the ring may be waiting
+                        // for it, for instance when nothing else is captured after a photo
+                        if (mImageRing.size() > 0) {
+                            mCaptureHandler.post(mFeedPipeline);
+                        }
+                        return preprocess(image);
+                    }
+
+                    @Override
+                    public void discard(Image image) {
+                        image.close();
+                    }
+                })
+                .then("infer", INFER_QUEUE_SIZE, new Pipeline.Processor<Frame, Frame>() {
+                    @Override
+                    public Frame process(Frame frame) throws InterruptedException {
+                        doRecognize(frame);
+                        return frame;
+                    }
+
+                    @Override
+                    public void discard(Frame frame) {
+                        recycle(frame);
+                    }
+                })
+                .then("publish", PUBLISH_QUEUE_SIZE, new Pipeline.Processor<Frame, Void>() {
                     @Override
-                    public void onImageAvailable(ImageReader imageReader) {
-                        Bitmap bitmap = mImagePreprocessor.preprocessImage(imageReader.acquireNextImage());
-                        onPhotoReady(bitmap);
+                    public Void process(Frame frame) {
+                        publish(frame);
+                        return null;
+                    }
+
+                    @Override
+                    public void discard(Frame frame) {
+                        recycle(frame);
                     }
                 });
+        mPipeline.setMetrics(mMetrics);
+        mPipeline.start();
+    }
+
+    /**
+     * Export the counters kept by the camera side components, read when the metrics are
+     * collected.
+     */
+    private void initMetrics() {
+        mMetrics.counter("camera_frames_produced", new Gauge() {
+            @Override
+            public long getValue() {
+                return mImageRing.getProducedCount();
+            }
+        });
+        mMetrics.counter("camera_frames_dropped", new Gauge() {
+            @Override
+            public long getValue() {
+                return mImageRing.getDroppedCount();
+            }
+        });
+        mMetrics.counter("camera_frames_classified", new Gauge() {
+            @Override
+            public long getValue() {
+                return mImageRing.getClassifiedCount();
+            }
+        });
+        mMetrics.counter("motion_gate_skipped", new Gauge() {
+            @Override
+            public long getValue() {
+                return mMotionGate.getSkippedCount();
+            }
+        });
+        mMetrics.counter("result_cache_hits", new Gauge() {
+            @Override
+            public long getValue() {
+                return mResultCache.getHitCount();
+            }
+        });
+        mMetrics.counter("result_cache_misses", new Gauge() {
+            @Override
+            public long getValue() {
+                return mResultCache.getMissCount();
+            }
+        });
+        mMetrics.gauge("bitmap_pool_bytes", new Gauge() {
+            @Override
+            public long getValue() {
+                return mBitmapPool.getSizeBytes();
+            }
+        });
+    }
+
+    /**
+     * Move frames from the ring to the pipeline while it has room. Called on the capture
+     * thread, the only one offering frames to the pipeline, when a frame arrives and when
+     * the preprocess stage makes room. Once it is full, new frames wait in the ring, which
+     * drops them according to its policy.
+     */
+    private void feedPipeline() {
+        while (mPipeline.getRemainingCapacity() > 0) {
+            mFeedingFrame = true;
+            try {
+                Image image = mImageRing.poll();
+                if (image == null) {
+                    return;
+                }
+                final long timestamp = image.getTimestamp();
+                if (!mPipeline.offer(image)) {
+                    // Stopped
+                    image.close();
+                    return;
+                }
+                mCaptureTime.record(mCameraHandler.getTimestampNanos() - timestamp);
+            } finally {
+                mFeedingFrame = false;
+            }
+        }
+    }
+
+    /**
+     * Convert a camera frame into the model input. Runs on the preprocess stage.
+     *
+     * @return the frame, or {@code null} if the motion gate skipped it.
+     */
+    private Frame preprocess(Image image) {
+        if (!hasChanged(image)) {
+            image.close();
+            return null;
+        }
+        Frame frame = mFreeFrames.poll();
+        if (frame == null) {
+            throw new IllegalStateException("No free frame, FRAME_COUNT is too low");
+        }
+        try {
+            frame.mTimestamp = image.getTimestamp();
+            mImagePreprocessor.preprocessImage(image, frame.mInput);
+            frame.mHash = mImageHash.compute(frame.mInput);
+        } catch (RuntimeException e) {
+            // The pipeline only discards the image, the frame goes back to the pool here
+            recycle(frame);
+            throw e;
+        }
+        return frame;
+    }
+
+    /**
+     * @return {@code false} for a streamed frame too similar to the previous ones to be worth
+     * converting and classifying. Pictures taken on demand always pass, as do JPEG frames,
+     * whose luminance is only known after decoding them.
+     */
+    private boolean hasChanged(Image image) {
+        if (!mCameraHandler.isStreaming() || image.getFormat() != ImageFormat.YUV_420_888) {
+            mGateStreaming = false;
+            return true;
+        }
+        if (!mGateStreaming) {
+            // Streaming restarted, the previous frames are no reference anymore
+            mMotionGate.reset();
+            mGateStreaming = true;
+        }
+        Image.Plane luma = image.getPlanes()[0];
+        return mMotionGate.accept(luma.getBuffer(), luma.getRowStride(), image.getTimestamp());
+    }
+
+    /**
+     * Draw the preview of a classified frame, and post it to the UI thread with the results.
+     * Runs on the publish stage.
+     */
+    private void publish(Frame frame) {
+        final long start = System.nanoTime();
+        final long timestamp = frame.mTimestamp;
+        final Bitmap preview = mBitmapPool.acquire(
+                TF_INPUT_IMAGE_WIDTH, TF_INPUT_IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+        ImagePreprocessor.renderPreview(frame.mInput, mPreviewPixels, preview);
+        final Collection<Recognition> results = frame.mResults;
+        mResultLog.add(System.currentTimeMillis(), frame.mModel, frame.mCached, results);
+        recycle(frame);
+        mImageRing.recordClassified();
+        mPendingResults.incrementAndGet();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPendingResults.decrementAndGet();
+                onPhotoRecognitionReady(preview, results);
+                mPublishTime.recordSince(start);
+                mFrameLatency.record(mCameraHandler.getTimestampNanos() - timestamp);
+            }
+        });
+    }
+
+    private void recycle(Frame frame) {
+        frame.mResults = null;
+        frame.mModel = null;
+        mFreeFrames.offer(frame);
+    }
+
+    /**
+     * Stop the pipeline stages, and close the frames they hold. Must be called before the
+     * camera is closed.
+     */
+    private void stopPipeline() throws InterruptedException {
+        mPipeline.stop(PIPELINE_STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        for (StageStats stats : mPipeline.getStats()) {
+            Log.d(TAG, "Pipeline stage " + stats);
+        }
+        Log.d(TAG, "Metrics " + mMetrics);
     }
 
     /**
      * Clean up resources used by the camera.
      */
     private void closeCamera() {
+        mImageRing.clear();
+        Log.d(TAG, "Frames produced " + mImageRing.getProducedCount()
+                + ", dropped " + mImageRing.getDroppedCount()
+                + ", classified " + mImageRing.getClassifiedCount());
+        Log.d(TAG, "Motion gate passed " + mMotionGate.getPassedCount()
+                + " frames, " + mMotionGate.getKeepAliveCount() + " of them to keep alive, "
+                + "skipped " + mMotionGate.getSkippedCount());
         mCameraHandler.shutDown();
+        mCaptureThread.quitSafely();
+        // The preview bitmap goes back to the pool, and may be recycled
+        mImage.setImageDrawable(null);
+        if (mShownPreview != null) {
+            mBitmapPool.release(mShownPreview);
+            mShownPreview = null;
+        }
+        mImagePreprocessor.release();
+        Log.d(TAG, "Bitmap pool hits " + mBitmapPool.getHitCount()
+                + ", misses " + mBitmapPool.getMissCount()
+                + ", evictions " + mBitmapPool.getEvictionCount());
+        mBitmapPool.clear();
     }
 
     /**
      * Load the image that will be used in the classification process.
-     * When done, the method {@link #onPhotoReady(Bitmap)} must be called with the image.
+     * The frame goes from the camera through the pipeline like streamed ones.
      */
     private void loadPhoto() {
         mCameraHandler.takePicture();
     }
 
+    /**
+     * Switch between single shots and continuous classification of the camera frames.
+     */
+    private void toggleStreaming() {
+        if (mCameraHandler.isStreaming()) {
+            mCameraHandler.stopStreaming();
+            updateStatus(getString(R.string.help_message));
+        } else {
+            mCameraHandler.startStreaming();
+            updateStatus("Continuous photo recognition");
+        }
+    }
+
 
 
     // --------------------------------------------------------------------------------------
@@ -167,24 +718,146 @@ public class ImageClassifierActivity extends Activity {
         mResultText = findViewById(R.id.resultText);
 
         updateStatus(getString(R.string.initializing));
-        initCamera();
-        initClassifier();
-        initButton();
+        Log.i(TAG, "Activity created " + (SystemClock.elapsedRealtime()
+                - Process.getStartElapsedRealtime()) + "ms after the process started, "
+                + Process.getStartElapsedRealtime() + "ms after boot");
+        startup();
+        initStatusServer();
+    }
+
+    /**
+     * Serve the metrics and the last results over HTTP on the loopback interface, for
+     * boards running without a screen. POST requests press the buttons: /classify takes a
+     * picture, /stream toggles continuous recognition and /model switches to the next model,
+     * going through the same checks as the key events.
+     *
+     * <pre>
+     * adb forward tcp:8080 tcp:8080
+     * curl localhost:8080/metrics
+     * curl localhost:8080/results
+     * curl -X POST localhost:8080/classify
+     * </pre>
+     */
+    private void initStatusServer() {
+        mStatusServer = new StatusServer(STATUS_PORT);
+        mStatusServer.get("/metrics", PrometheusFormat.CONTENT_TYPE,
+                new StatusServer.Resource() {
+                    @Override
+                    public void write(StringBuilder body) {
+                        PrometheusFormat.write(mMetrics, body);
+                    }
+                });
+        mStatusServer.get("/results", "application/json", new StatusServer.Resource() {
+            @Override
+            public void write(StringBuilder body) {
+                mResultLog.writeJson(body);
+            }
+        });
+        postKey("/classify", KeyEvent.KEYCODE_ENTER);
+        postKey("/stream", KeyEvent.KEYCODE_SPACE);
+        postKey("/model", KeyEvent.KEYCODE_TAB);
+        try {
+            mStatusServer.start();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot start the status server on port " + STATUS_PORT, e);
+            mStatusServer = null;
+        }
+    }
+
+    /**
+     * Handle POST requests for a path as a key press on the main thread.
+     */
+    private void postKey(String path, final int keyCode) {
+        mStatusServer.post(path, new Runnable() {
+            @Override
+            public void run() {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isDestroyed()) {
+                            onKeyUp(keyCode, new KeyEvent(KeyEvent.ACTION_UP, keyCode));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Initialize the camera, the classifier and the buttons concurrently. They are
+     * independent, so startup takes as long as the slowest of them rather than their sum.
+     * Camera and classifier get a thread each, while the buttons register on the main thread
+     * since their GPIO callbacks are bound to its looper.
+     */
+    private void startup() {
+        mStartupExecutor = Executors.newFixedThreadPool(2);
+        new StartupBarrier(mStartupTrace)
+                .add("camera", mStartupExecutor, new Runnable() {
+                    @Override
+                    public void run() {
+                        initCamera();
+                    }
+                })
+                .add("classifier", mStartupExecutor, new Runnable() {
+                    @Override
+                    public void run() {
+                        initClassifier();
+                        awaitClassifierReady();
+                    }
+                })
+                .add("buttons", new HandlerExecutor(mMainHandler), new Runnable() {
+                    @Override
+                    public void run() {
+                        initButton();
+                    }
+                })
+                .start(new Runnable() {
+                    @Override
+                    public void run() {
+                        mMainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onStartupComplete();
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * Every startup task is over, successfully or not. Called on the main thread.
+     */
+    private void onStartupComplete() {
+        if (isDestroyed()) {
+            return;
+        }
+        mStartupExecutor.shutdown();
+        mStartupComplete = true;
+        mStartupTrace.mark("startup complete");
+        Log.i(TAG, mStartupTrace.toString());
         updateStatus(getString(R.string.help_message));
     }
 
     /**
      * Register a GPIO button that, when clicked, will generate the {@link KeyEvent#KEYCODE_ENTER}
      * key, to be handled by {@link #onKeyUp(int, KeyEvent)} just like any regular keyboard
-     * event.
+     * event. A second button generates {@link KeyEvent#KEYCODE_SPACE}, which toggles
+     * continuous recognition, and a third one {@link KeyEvent#KEYCODE_TAB}, which switches
+     * to the next model.
      *
      * If there's no button connected to the board, the doRecognize can still be triggered by
-     * sending key events using a USB keyboard or `adb shell input keyevent 66`.
+     * sending key events using a USB keyboard or `adb shell input keyevent 66`, continuous
+     * recognition with `adb shell input keyevent 62` and model switches with
+     * `adb shell input keyevent 61`.
      */
     private void initButton() {
         try {
             mButtonDriver = RainbowHat.createButtonCInputDriver(KeyEvent.KEYCODE_ENTER);
             mButtonDriver.register();
+            mStreamButtonDriver = RainbowHat.createButtonBInputDriver(KeyEvent.KEYCODE_SPACE);
+            mStreamButtonDriver.register();
+            mModelButtonDriver = RainbowHat.createButtonAInputDriver(KeyEvent.KEYCODE_TAB);
+            mModelButtonDriver.register();
         } catch (IOException e) {
             Log.w(TAG, "Cannot find button. Ignoring push button. Use a keyboard instead.", e);
         }
@@ -197,13 +870,48 @@ public class ImageClassifierActivity extends Activity {
 
     @Override
     public boolean onKeyUp(int keyCode, KeyEvent event) {
+        boolean handled = keyCode == KeyEvent.KEYCODE_SPACE || keyCode == KeyEvent.KEYCODE_ENTER
+                || keyCode == KeyEvent.KEYCODE_TAB;
+        if (handled && !mStartupComplete) {
+            updateStatus(getString(R.string.initializing));
+            return true;
+        }
+        if (handled && keyCode != KeyEvent.KEYCODE_TAB
+                && mClassifier != null && mClassifier.getFailure() != null) {
+            // Switching to another model is still worth a try
+            updateStatus(getString(R.string.model_failed));
+            return true;
+        }
+        if (handled && isWarmingUp()) {
+            updateStatus(getString(R.string.warming_up));
+            return true;
+        }
+        if (keyCode == KeyEvent.KEYCODE_TAB) {
+            if (mPendingModel != null) {
+                updateStatus("Still switching to model " + mPendingModel + ", please wait");
+                return true;
+            }
+            switchModel();
+            return true;
+        }
+        if (keyCode == KeyEvent.KEYCODE_SPACE) {
+            if (!mCameraHandler.isStreaming() && isProcessing()) {
+                updateStatus("Still processing, please wait");
+                return true;
+            }
+            toggleStreaming();
+            return true;
+        }
         if (keyCode == KeyEvent.KEYCODE_ENTER) {
-            if (mProcessing) {
+            if (mCameraHandler.isStreaming()) {
+                updateStatus("Continuous recognition is on, stop it to take a picture");
+                return true;
+            }
+            if (isProcessing()) {
                 updateStatus("Still processing, please wait");
                 return true;
             }
             updateStatus("Running photo recognition");
-            mProcessing = true;
             loadPhoto();
             return true;
         }
@@ -211,19 +919,44 @@ public class ImageClassifierActivity extends Activity {
     }
 
     /**
-     * Image capture process complete
+     * @return {@code true} until the first model has run its warm-up inferences, unless it
+     * failed to load.
+     */
+    private boolean isWarmingUp() {
+        return mClassifier != null && !mClassifier.isReady()
+                && mClassifier.getFailure() == null;
+    }
+
+    /**
+     * @return {@code true} while a photo is being captured or classified, until its results
+     * are shown.
      */
-    private void onPhotoReady(Bitmap bitmap) {
-        mImage.setImageBitmap(bitmap);
-        doRecognize(bitmap);
+    private boolean isProcessing() {
+        // Read in the order a frame moves along, each step being entered before the previous
+        // one is left, so that a frame in between two of them is never missed
+        return mCameraHandler.isCaptureInProgress() || mImageRing.size() > 0 || mFeedingFrame
+                || !mPipeline.isIdle() || mPendingResults.get() > 0;
     }
 
     /**
-     * Image classification process complete
+     * Image classification process complete, show the frame along with its results
      */
-    private void onPhotoRecognitionReady(Collection<Recognition> results) {
+    private void onPhotoRecognitionReady(Bitmap preview, Collection<Recognition> results) {
+        if (isDestroyed()) {
+            mBitmapPool.release(preview);
+            return;
+        }
+        mImage.setImageBitmap(preview);
+        if (mShownPreview != null) {
+            mBitmapPool.release(mShownPreview);
+        }
+        mShownPreview = preview;
         updateStatus(formatResults(results));
-        mProcessing = false;
+        if (!mFirstResultTraced) {
+            mFirstResultTraced = true;
+            mStartupTrace.mark("first classification");
+            Log.i(TAG, mStartupTrace.toString());
+        }
     }
 
     /**
@@ -262,6 +995,21 @@ public class ImageClassifierActivity extends Activity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (mStatusServer != null) {
+            mStatusServer.close();
+        }
+        try {
+            // Startup tasks may still be filling in the fields released below
+            mStartupExecutor.shutdownNow();
+            mStartupExecutor.awaitTermination(STARTUP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (Throwable t) {
+            // close quietly
+        }
+        try {
+            stopPipeline();
+        } catch (Throwable t) {
+            // close quietly
+        }
         try {
             destroyClassifier();
         } catch (Throwable t) {
@@ -277,5 +1025,15 @@ public class ImageClassifierActivity extends Activity {
         } catch (Throwable t) {
             // close quietly
         }
+        try {
+            if (mStreamButtonDriver != null) mStreamButtonDriver.close();
+        } catch (Throwable t) {
+            // close quietly
+        }
+        try {
+            if (mModelButtonDriver != null) mModelButtonDriver.close();
+        } catch (Throwable t) {
+            // close quietly
+        }
     }
 }
@@ -18,87 +18,265 @@ package com.example.androidthings.imageclassifier;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Matrix;
+import android.graphics.ImageFormat;
 import android.media.Image;
 import android.os.Environment;
 import android.util.Log;
 
+import com.example.androidthings.imageclassifier.metrics.Histogram;
+import com.example.androidthings.imageclassifier.metrics.MetricsRegistry;
+
 import junit.framework.Assert;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
- * Class that process an Image and extracts a Bitmap in a format appropriate for
- * the TensorFlow model.
+ * Class that process an Image and extracts the input of the TensorFlow model: the center
+ * square of the frame, scaled to the model size, as packed RGB bytes.
+ *
+ * JPEG frames are decoded to a Bitmap, subsampled to the smallest size that still covers the
+ * model input, whose pixels then go through a single crop, scale and channel split pass.
+ * YUV_420_888 frames are converted directly from their planes, without any intermediate image.
  */
 public class ImagePreprocessor {
     private static final boolean SAVE_PREVIEW_BITMAP = false;
+    private static final int DIM_PIXEL_SIZE = 3;
 
+    private final int previewWidth;
+    private final int previewHeight;
+    private final int sampling;
+    private final BitmapPool bitmapPool;
+
+    /** Decoded JPEG frame, reused by the decoder for the next frame. */
     private Bitmap rgbFrameBitmap;
     private Bitmap croppedBitmap;
+    /** Pixels of rgbFrameBitmap, fed to the crop and scale kernel. */
+    private int[] framePixels;
+    /** Compressed JPEG frame, copied out of the image plane. */
+    private byte[] jpegBytes;
+    private final BitmapFactory.Options decodeOptions;
+    /** Pixels of croppedBitmap, when rendering the model input for preview. */
+    private final int[] croppedPixels;
+    /** Model input of the last processed frame. */
+    private final ByteBuffer inputBuffer;
+    private final YuvConverter yuvConverter;
+    private CropScaleKernel cropScaleKernel;
+    /** Whether croppedBitmap lags behind inputBuffer. */
+    private boolean previewStale;
+    /** Time spent per step of the conversion, or null when not measured. */
+    private Histogram decodeTime;
+    private Histogram cropScaleTime;
+    private Histogram yuvConvertTime;
 
     public ImagePreprocessor(int previewWidth, int previewHeight,
-                             int croppedwidth, int croppedHeight) {
-        this.croppedBitmap = Bitmap.createBitmap(croppedwidth, croppedHeight, Config.ARGB_8888);
-        this.rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
+                             int croppedwidth, int croppedHeight, BitmapPool bitmapPool) {
+        this(previewWidth, previewHeight, croppedwidth, croppedHeight,
+                CropScaleKernel.NEAREST, bitmapPool);
     }
 
-    public Bitmap preprocessImage(final Image image) {
-        if (image == null) {
-            return null;
-        }
+    /**
+     * @param sampling   resampling of decoded JPEG frames, {@link CropScaleKernel#NEAREST} or
+     *                   {@link CropScaleKernel#BILINEAR}.
+     * @param bitmapPool pool the frame and preview bitmaps are taken from, and given back to
+     *                   by {@link #release()}.
+     */
+    public ImagePreprocessor(int previewWidth, int previewHeight,
+                             int croppedwidth, int croppedHeight, int sampling,
+                             BitmapPool bitmapPool) {
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+        this.sampling = sampling;
+        this.bitmapPool = bitmapPool;
+
+        final int sampleSize = computeSampleSize(previewWidth, previewHeight,
+                croppedwidth, croppedHeight);
+        final int decodedWidth = previewWidth / sampleSize;
+        final int decodedHeight = previewHeight / sampleSize;
+        this.decodeOptions = new BitmapFactory.Options();
+        this.decodeOptions.inSampleSize = sampleSize;
+        this.decodeOptions.inMutable = true;
+        this.decodeOptions.inPreferredConfig = Config.ARGB_8888;
 
-        Assert.assertEquals("Invalid size width", rgbFrameBitmap.getWidth(), image.getWidth());
-        Assert.assertEquals("Invalid size height", rgbFrameBitmap.getHeight(), image.getHeight());
+        this.croppedBitmap = bitmapPool.acquire(croppedwidth, croppedHeight, Config.ARGB_8888);
+        this.rgbFrameBitmap = bitmapPool.acquire(decodedWidth, decodedHeight, Config.ARGB_8888);
+        this.framePixels = new int[decodedWidth * decodedHeight];
+        this.croppedPixels = new int[croppedwidth * croppedHeight];
+        this.inputBuffer = ByteBuffer.allocateDirect(
+                croppedwidth * croppedHeight * DIM_PIXEL_SIZE);
+        this.inputBuffer.order(ByteOrder.nativeOrder());
+        this.yuvConverter = new YuvConverter(previewWidth, previewHeight,
+                croppedwidth, croppedHeight);
+        this.cropScaleKernel = new CropScaleKernel(decodedWidth, decodedHeight,
+                croppedwidth, croppedHeight, sampling);
+    }
 
-        if (croppedBitmap != null && rgbFrameBitmap != null) {
-            ByteBuffer bb = image.getPlanes()[0].getBuffer();
-            rgbFrameBitmap = BitmapFactory.decodeStream(new ByteBufferBackedInputStream(bb));
-            cropAndRescaleBitmap(rgbFrameBitmap, croppedBitmap, 0);
+    /**
+     * @return the largest power of two by which the frame can be subsampled while its center
+     * square still has at least as many pixels as the model input on each side.
+     */
+    static int computeSampleSize(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        final int minDim = Math.min(srcWidth, srcHeight);
+        final int required = Math.max(dstWidth, dstHeight);
+        int sampleSize = 1;
+        while (minDim / (sampleSize * 2) >= required) {
+            sampleSize *= 2;
         }
+        return sampleSize;
+    }
 
-        image.close();
+    /**
+     * Record the time spent decoding JPEG frames, cropping and scaling them, and converting
+     * YUV frames, in nanoseconds. Must be called before the first frame is processed.
+     */
+    public void setMetrics(MetricsRegistry registry) {
+        decodeTime = registry.histogram("preprocess_jpeg_decode");
+        cropScaleTime = registry.histogram("preprocess_crop_scale");
+        yuvConvertTime = registry.histogram("preprocess_yuv_convert");
+    }
+
+    /**
+     * Convert a camera frame into the model input, and close the frame.
+     *
+     * @return the model input. The buffer is reused for the next frame, so it must not be
+     * handed to the next call before the classifier is done with it.
+     */
+    public ByteBuffer preprocessImage(final Image image) {
+        if (image == null) {
+            return null;
+        }
+        preprocessImage(image, inputBuffer);
+        previewStale = true;
 
         // For debugging
         if (SAVE_PREVIEW_BITMAP) {
-            saveBitmap(croppedBitmap);
+            saveBitmap(getPreviewBitmap());
         }
-        return croppedBitmap;
+        return inputBuffer;
     }
 
-    private static class ByteBufferBackedInputStream extends InputStream {
+    /**
+     * Convert a camera frame into a model input buffer owned by the caller, and close the
+     * frame. Unlike {@link #preprocessImage(Image)}, the preview bitmap is left alone.
+     *
+     * @param input direct buffer of the model input size.
+     */
+    public void preprocessImage(final Image image, final ByteBuffer input) {
+        Assert.assertEquals("Invalid size width", previewWidth, image.getWidth());
+        Assert.assertEquals("Invalid size height", previewHeight, image.getHeight());
 
-        ByteBuffer buf;
+        try {
+            long start = System.nanoTime();
+            if (image.getFormat() == ImageFormat.YUV_420_888) {
+                Image.Plane[] planes = image.getPlanes();
+                yuvConverter.convert(
+                        planes[0].getBuffer(), planes[0].getRowStride(),
+                        planes[1].getBuffer(), planes[2].getBuffer(),
+                        planes[1].getRowStride(), planes[1].getPixelStride(),
+                        input);
+                if (yuvConvertTime != null) {
+                    yuvConvertTime.recordSince(start);
+                }
+            } else {
+                decodeJpeg(image.getPlanes()[0].getBuffer());
+                if (decodeTime != null) {
+                    long decoded = System.nanoTime();
+                    decodeTime.record(decoded - start);
+                    start = decoded;
+                }
+                final int width = rgbFrameBitmap.getWidth();
+                final int height = rgbFrameBitmap.getHeight();
+                if (cropScaleKernel.getSrcWidth() != width
+                        || cropScaleKernel.getSrcHeight() != height) {
+                    // The decoder rounded the subsampled size differently than expected
+                    cropScaleKernel = new CropScaleKernel(width, height,
+                            croppedBitmap.getWidth(), croppedBitmap.getHeight(), sampling);
+                    framePixels = new int[width * height];
+                }
+                rgbFrameBitmap.getPixels(framePixels, 0, width, 0, 0, width, height);
+                cropScaleKernel.apply(framePixels, input);
+                if (cropScaleTime != null) {
+                    cropScaleTime.recordSince(start);
+                }
+            }
+        } finally {
+            image.close();
+        }
+    }
 
-        public ByteBufferBackedInputStream(ByteBuffer buf) {
-            this.buf = buf;
+    /**
+     * @return a Bitmap showing the model input of the last processed frame. The Bitmap is
+     * reused for the next frame.
+     */
+    public Bitmap getPreviewBitmap() {
+        if (previewStale) {
+            renderPreview(inputBuffer, croppedPixels, croppedBitmap);
+            previewStale = false;
         }
+        return croppedBitmap;
+    }
 
-        public int read() throws IOException {
-            if (!buf.hasRemaining()) {
-                return -1;
-            }
-            return buf.get() & 0xFF;
+    /**
+     * Draw a model input into a bitmap of the same size. Safe to call from any thread, as
+     * long as the pixel array is not shared.
+     *
+     * @param pixels scratch array of one int per pixel of the bitmap.
+     */
+    public static void renderPreview(ByteBuffer input, int[] pixels, Bitmap bitmap) {
+        // Absolute reads, the classifier may be reading the same buffer meanwhile
+        for (int i = 0, j = 0; i < pixels.length; i++, j += DIM_PIXEL_SIZE) {
+            final int r = input.get(j) & 0xff;
+            final int g = input.get(j + 1) & 0xff;
+            final int b = input.get(j + 2) & 0xff;
+            pixels[i] = 0xff000000 | (r << 16) | (g << 8) | b;
         }
+        bitmap.setPixels(pixels, 0, bitmap.getWidth(), 0, 0,
+                bitmap.getWidth(), bitmap.getHeight());
+    }
 
-        public int read(byte[] bytes, int off, int len)
-                throws IOException {
-            if (!buf.hasRemaining()) {
-                return -1;
-            }
+    /**
+     * Decode a JPEG frame into {@link #rgbFrameBitmap}, reusing its pixel memory.
+     */
+    private void decodeJpeg(ByteBuffer jpeg) {
+        final int length = jpeg.remaining();
+        if (jpegBytes == null || jpegBytes.length < length) {
+            jpegBytes = new byte[length];
+        }
+        jpeg.get(jpegBytes, 0, length);
 
-            len = Math.min(len, buf.remaining());
-            buf.get(bytes, off, len);
-            return len;
+        decodeOptions.inBitmap = rgbFrameBitmap;
+        Bitmap decoded;
+        try {
+            decoded = BitmapFactory.decodeByteArray(jpegBytes, 0, length, decodeOptions);
+        } catch (IllegalArgumentException e) {
+            // The frame does not fit in the reused bitmap, let the decoder allocate one
+            Log.w("ImageHelper", "Cannot reuse the frame bitmap", e);
+            decodeOptions.inBitmap = null;
+            decoded = BitmapFactory.decodeByteArray(jpegBytes, 0, length, decodeOptions);
+        }
+        if (decoded == null) {
+            throw new IllegalStateException("Cannot decode JPEG frame");
+        }
+        if (decoded != rgbFrameBitmap) {
+            bitmapPool.release(rgbFrameBitmap);
+            rgbFrameBitmap = decoded;
         }
     }
 
+    /**
+     * Give the bitmaps of this preprocessor back to the pool. The preprocessor must not be
+     * used afterwards.
+     */
+    public void release() {
+        bitmapPool.release(rgbFrameBitmap);
+        bitmapPool.release(croppedBitmap);
+        rgbFrameBitmap = null;
+        croppedBitmap = null;
+    }
+
     /**
      * Saves a Bitmap object to disk for analysis.
      *
@@ -119,30 +297,4 @@ public class ImagePreprocessor {
             Log.w("ImageHelper", "Could not save image for debugging", e);
         }
     }
-
-    static void cropAndRescaleBitmap(final Bitmap src, final Bitmap dst,
-                                     int sensorOrientation) {
-        Assert.assertEquals(dst.getWidth(), dst.getHeight());
-        final float minDim = Math.min(src.getWidth(), src.getHeight());
-
-        final Matrix matrix = new Matrix();
-
-        // We only want the center square out of the original rectangle.
-        final float translateX = -Math.max(0, (src.getWidth() - minDim) / 2);
-        final float translateY = -Math.max(0, (src.getHeight() - minDim) / 2);
-        matrix.preTranslate(translateX, translateY);
-
-        final float scaleFactor = dst.getHeight() / minDim;
-        matrix.postScale(scaleFactor, scaleFactor);
-
-        // Rotate around the center if necessary.
-        if (sensorOrientation != 0) {
-            matrix.postTranslate(-dst.getWidth() / 2.0f, -dst.getHeight() / 2.0f);
-            matrix.postRotate(sensorOrientation);
-            matrix.postTranslate(dst.getWidth() / 2.0f, dst.getHeight() / 2.0f);
-        }
-
-        final Canvas canvas = new Canvas(dst);
-        canvas.drawBitmap(src, matrix, null);
-    }
-}
\ No newline at end of file
+}
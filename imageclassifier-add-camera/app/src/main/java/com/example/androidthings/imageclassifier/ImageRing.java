@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import android.media.Image;
+import android.media.ImageReader;
+
+import java.util.ArrayDeque;
+
+/**
+ * A ring of camera frames between the {@link ImageReader} and a consumer that may be slower
+ * than the camera. Frames are acquired as soon as they are available, and handed out in
+ * capture order by {@link #poll()}. When the ring is full, the overflow policy decides what
+ * happens to the next frame.
+ *
+ * The reader must be created with {@link #getRequiredMaxImages()} images, one more than the
+ * ring capacity, so that a frame can always be acquired in order to be dropped.
+ */
+public class ImageRing implements ImageReader.OnImageAvailableListener {
+    /** When full, close the oldest frame of the ring to make room for the new one. */
+    public static final int DROP_OLDEST = 0;
+    /** When full, close the new frame. */
+    public static final int DROP_NEWEST = 1;
+    /**
+     * When full, leave the new frame in the reader. Once the reader runs out of images, the
+     * camera stops delivering frames until the consumer catches up.
+     */
+    public static final int BLOCK = 2;
+
+    /**
+     * Notified on the reader handler thread whenever a frame enters the ring.
+     */
+    public interface Listener {
+        void onFrameAvailable(ImageRing ring);
+    }
+
+    private final int mCapacity;
+    private final int mPolicy;
+    private final Listener mListener;
+    private final ArrayDeque<Image> mImages;
+
+    private ImageReader mReader;
+    /** Frames left in the reader by the {@link #BLOCK} policy. */
+    private int mPending;
+
+    private long mProduced;
+    private long mDropped;
+    private long mConsumed;
+    private long mClassified;
+
+    /**
+     * @param capacity number of frames held by the ring, at least 1.
+     * @param policy   {@link #DROP_OLDEST}, {@link #DROP_NEWEST} or {@link #BLOCK}.
+     */
+    public ImageRing(int capacity, int policy, Listener listener) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        if (policy != DROP_OLDEST && policy != DROP_NEWEST && policy != BLOCK) {
+            throw new IllegalArgumentException("Unknown policy " + policy);
+        }
+        mCapacity = capacity;
+        mPolicy = policy;
+        mListener = listener;
+        mImages = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * @return the number of images the {@link ImageReader} feeding this ring must allow.
+     */
+    public int getRequiredMaxImages() {
+        return mCapacity + 1;
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        synchronized (this) {
+            mReader = reader;
+            mProduced++;
+            if (mImages.size() == mCapacity) {
+                switch (mPolicy) {
+                    case DROP_OLDEST:
+                        mImages.pollFirst().close();
+                        mDropped++;
+                        break;
+                    case DROP_NEWEST:
+                        closeQuietly(reader.acquireNextImage());
+                        mDropped++;
+                        return;
+                    case BLOCK:
+                        mPending++;
+                        return;
+                }
+            }
+            Image image = reader.acquireNextImage();
+            if (image == null) {
+                return;
+            }
+            mImages.addLast(image);
+        }
+        mListener.onFrameAvailable(this);
+    }
+
+    /**
+     * Take the oldest frame out of the ring. The caller must close it.
+     *
+     * @return the frame, or {@code null} if the ring is empty.
+     */
+    public Image poll() {
+        synchronized (this) {
+            Image image = mImages.pollFirst();
+            if (image == null) {
+                return null;
+            }
+            mConsumed++;
+            // Make room for a frame held back in the reader
+            if (mPending > 0 && mReader != null) {
+                mPending--;
+                Image pending = mReader.acquireNextImage();
+                if (pending != null) {
+                    mImages.addLast(pending);
+                }
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Record that a frame taken from the ring has been classified.
+     */
+    public synchronized void recordClassified() {
+        mClassified++;
+    }
+
+    /**
+     * Close all the frames held by the ring. Must be called before the reader is closed.
+     */
+    public synchronized void clear() {
+        Image image;
+        while ((image = mImages.pollFirst()) != null) {
+            image.close();
+            mDropped++;
+        }
+        mPending = 0;
+        mReader = null;
+    }
+
+    private static void closeQuietly(Image image) {
+        if (image != null) {
+            image.close();
+        }
+    }
+
+    /** Frames currently held by the ring. */
+    public synchronized int size() {
+        return mImages.size();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /** Frames delivered by the camera. */
+    public synchronized long getProducedCount() {
+        return mProduced;
+    }
+
+    /** Frames closed without being handed to the consumer. */
+    public synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    /** Frames handed to the consumer. */
+    public synchronized long getConsumedCount() {
+        return mConsumed;
+    }
+
+    /** Frames reported as classified by the consumer. */
+    public synchronized long getClassifiedCount() {
+        return mClassified;
+    }
+}
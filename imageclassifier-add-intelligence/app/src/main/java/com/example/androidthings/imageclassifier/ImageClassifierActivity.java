@@ -19,22 +19,25 @@ import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Bundle;
+import android.os.Handler;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.WindowManager;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.androidthings.imageclassifier.classifier.ClassificationEngine;
+import com.example.androidthings.imageclassifier.classifier.ClassifierConfig;
+import com.example.androidthings.imageclassifier.classifier.HandlerExecutor;
+import com.example.androidthings.imageclassifier.classifier.LogcatTracer;
+import com.example.androidthings.imageclassifier.classifier.ModelAssets;
 import com.example.androidthings.imageclassifier.classifier.Recognition;
-import com.example.androidthings.imageclassifier.classifier.TensorFlowHelper;
+import com.example.androidthings.imageclassifier.classifier.TfLiteBackend;
 import com.google.android.things.contrib.driver.button.ButtonInputDriver;
 import com.google.android.things.contrib.driver.rainbowhat.RainbowHat;
 
-import org.tensorflow.lite.Interpreter;
-
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -48,21 +51,31 @@ public class ImageClassifierActivity extends Activity {
     /** Image dimensions required by TF model */
     private static final int TF_INPUT_IMAGE_WIDTH = 224;
     private static final int TF_INPUT_IMAGE_HEIGHT = 224;
-    /** Dimensions of model inputs. */
-    private static final int DIM_BATCH_SIZE = 1;
-    private static final int DIM_PIXEL_SIZE = 3;
+    /** Number of results to show, and minimum confidence for a result to be shown */
+    private static final int RESULTS_TO_SHOW = 3;
+    private static final float MIN_CONFIDENCE = 0f;
+    /** Trace one inference out of this many when the ImageRecognition log tag is enabled */
+    private static final int TRACE_SAMPLE_INTERVAL = 1;
+    /**
+     * Threads per inference, timed at startup by default. NNAPI is off by default since the
+     * boards without a neural network accelerator only ship its slower reference CPU path.
+     */
+    private static final int NUM_THREADS = ClassifierConfig.NUM_THREADS_CALIBRATE;
+    private static final boolean USE_NNAPI = false;
+    /** Inferences run on a blank image at startup, so that the first photo is not slower */
+    private static final int WARMUP_RUNS = 3;
     /** TF model asset files */
-    private static final String LABELS_FILE = "labels.txt";
+    private static final String LABEL_TABLE_FILE = "labels.bin";
     private static final String MODEL_FILE = "mobilenet_quant_v1_224.tflite";
 
     private ButtonInputDriver mButtonDriver;
-    private boolean mProcessing;
 
     private ImageView mImage;
     private TextView mResultText;
 
-    private Interpreter mTensorFlowLite;
-    private List<String> mLabels;
+    private ClassificationEngine mClassifier;
+    /** Pixels of the image being classified, reused for every request. */
+    private final int[] mPixels = new int[TF_INPUT_IMAGE_WIDTH * TF_INPUT_IMAGE_HEIGHT];
     // TODO: ADD CAMERA SUPPORT
 
     /**
@@ -70,8 +83,23 @@ public class ImageClassifierActivity extends Activity {
      */
     private void initClassifier() {
         try {
-            mTensorFlowLite = new Interpreter(TensorFlowHelper.loadModelFile(this, MODEL_FILE));
-            mLabels = TensorFlowHelper.readLabels(this, LABELS_FILE);
+            MappedByteBuffer model = ModelAssets.loadModelFile(this, MODEL_FILE);
+            List<String> labels = ModelAssets.loadLabelTable(this, LABEL_TABLE_FILE);
+            ClassifierConfig config = new ClassifierConfig.Builder()
+                    .setInputSize(TF_INPUT_IMAGE_WIDTH, TF_INPUT_IMAGE_HEIGHT)
+                    .setMaxResults(RESULTS_TO_SHOW)
+                    .setMinConfidence(MIN_CONFIDENCE)
+                    .setNumThreads(NUM_THREADS)
+                    .setUseNnapi(USE_NNAPI)
+                    .setWarmupRuns(WARMUP_RUNS)
+                    .build();
+            // The interpreter is created, calibrated and warmed up on the worker thread
+            mClassifier = new ClassificationEngine(
+                    new TfLiteBackend.Factory(model, config), labels, config,
+                    new HandlerExecutor(new Handler(getMainLooper())));
+            if (LogcatTracer.isEnabled()) {
+                mClassifier.setTracer(new LogcatTracer(TRACE_SAMPLE_INTERVAL));
+            }
         } catch (IOException e) {
             Log.w(TAG, "Unable to initialize TensorFlow Lite.", e);
         }
@@ -81,13 +109,14 @@ public class ImageClassifierActivity extends Activity {
      * Clean up the resources used by the classifier.
      */
     private void destroyClassifier() {
-        mTensorFlowLite.close();
+        mClassifier.close();
     }
 
     /**
      * Process an image and identify what is in it. When done, the method
      * {@link #onPhotoRecognitionReady(Collection)} must be called with the results of
-     * the image recognition process.
+     * the image recognition process. Inference runs on the classifier worker thread, and
+     * the results are posted back to the UI thread.
      *
      * @param image Bitmap containing the image to be classified. The image can be
      *              of any size, but preprocessing might occur to resize it to the
@@ -95,25 +124,22 @@ public class ImageClassifierActivity extends Activity {
      *              and power consuming.
      */
     private void doRecognize(Bitmap image) {
-        // Allocate space for the inference results
-        byte[][] confidencePerLabel = new byte[1][mLabels.size()];
-        // Allocate buffer for image pixels.
-        int[] intValues = new int[TF_INPUT_IMAGE_WIDTH * TF_INPUT_IMAGE_HEIGHT];
-        ByteBuffer imgData = ByteBuffer.allocateDirect(
-                DIM_BATCH_SIZE * TF_INPUT_IMAGE_WIDTH * TF_INPUT_IMAGE_HEIGHT * DIM_PIXEL_SIZE);
-        imgData.order(ByteOrder.nativeOrder());
-
-        // Read image data into buffer formatted for the TensorFlow model
-        TensorFlowHelper.convertBitmapToByteBuffer(image, intValues, imgData);
-
-        // Run inference on the network with the image bytes in imgData as input,
-        // storing results on the confidencePerLabel array.
-        mTensorFlowLite.run(imgData, confidencePerLabel);
-
-        // Get the results with the highest confidence and map them to their labels
-        Collection<Recognition> results = TensorFlowHelper.getBestResults(confidencePerLabel, mLabels);
-        // Report the results with the highest confidence
-        onPhotoRecognitionReady(results);
+        if (image.getWidth() != TF_INPUT_IMAGE_WIDTH
+                || image.getHeight() != TF_INPUT_IMAGE_HEIGHT) {
+            throw new IllegalArgumentException("Expected a " + TF_INPUT_IMAGE_WIDTH + "x"
+                    + TF_INPUT_IMAGE_HEIGHT + " image, got "
+                    + image.getWidth() + "x" + image.getHeight());
+        }
+        // Only one request runs at a time, so the pixel array is free to reuse
+        image.getPixels(mPixels, 0, TF_INPUT_IMAGE_WIDTH,
+                0, 0, TF_INPUT_IMAGE_WIDTH, TF_INPUT_IMAGE_HEIGHT);
+        mClassifier.classify(mPixels, new ClassificationEngine.Callback() {
+            @Override
+            public void onClassificationComplete(Collection<Recognition> results) {
+                // Report the results with the highest confidence
+                onPhotoRecognitionReady(results);
+            }
+        });
     }
 
     /**
@@ -187,18 +213,35 @@ public class ImageClassifierActivity extends Activity {
     @Override
     public boolean onKeyUp(int keyCode, KeyEvent event) {
         if (keyCode == KeyEvent.KEYCODE_ENTER) {
-            if (mProcessing) {
+            if (isWarmingUp()) {
+                updateStatus(getString(R.string.warming_up));
+                return true;
+            }
+            if (isProcessing()) {
                 updateStatus("Still processing, please wait");
                 return true;
             }
             updateStatus("Running photo recognition");
-            mProcessing = true;
             loadPhoto();
             return true;
         }
         return super.onKeyUp(keyCode, event);
     }
 
+    /**
+     * @return {@code true} until the classifier has run its warm-up inferences.
+     */
+    private boolean isWarmingUp() {
+        return mClassifier != null && !mClassifier.isReady();
+    }
+
+    /**
+     * @return {@code true} while a photo is being classified.
+     */
+    private boolean isProcessing() {
+        return mClassifier != null && !mClassifier.isIdle();
+    }
+
     /**
      * Image capture process complete
      */
@@ -212,7 +255,6 @@ public class ImageClassifierActivity extends Activity {
      */
     private void onPhotoRecognitionReady(Collection<Recognition> results) {
         updateStatus(formatResults(results));
-        mProcessing = false;
     }
 
     /**
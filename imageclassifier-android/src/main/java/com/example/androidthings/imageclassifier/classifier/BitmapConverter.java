@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import android.graphics.Bitmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts Android bitmaps into the input of the TensorFlow model, with the core packer.
+ */
+public class BitmapConverter {
+
+    /**
+     * Writes Image data into a {@code ByteBuffer}.
+     *
+     * @param bitmap    image of exactly the model input size.
+     * @param intValues scratch array of one int per pixel of the bitmap.
+     * @param imgData   direct buffer receiving packed RGB bytes, rewound first.
+     */
+    public static void convertBitmapToByteBuffer(Bitmap bitmap, int[] intValues,
+                                                 ByteBuffer imgData) {
+        if (imgData == null) {
+            return;
+        }
+        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0,
+                bitmap.getWidth(), bitmap.getHeight());
+        TensorFlowHelper.convertPixelsToByteBuffer(intValues,
+                bitmap.getWidth() * bitmap.getHeight(), imgData);
+    }
+}
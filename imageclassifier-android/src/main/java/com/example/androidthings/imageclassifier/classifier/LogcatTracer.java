@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ClassificationTracer} that logs the selected labels of one inference out of
+ * every {@code sampleInterval}. Only the winners are formatted, never the full score vector.
+ *
+ * Enable with {@code adb shell setprop log.tag.ImageRecognition DEBUG}.
+ */
+public class LogcatTracer implements ClassificationTracer {
+    public static final String TAG = "ImageRecognition";
+
+    private final int mSampleInterval;
+    private final AtomicInteger mInferences = new AtomicInteger();
+
+    /**
+     * @param sampleInterval log one inference out of this many, 1 to log them all.
+     */
+    public LogcatTracer(int sampleInterval) {
+        mSampleInterval = Math.max(1, sampleInterval);
+    }
+
+    /**
+     * @return {@code true} if the {@link #TAG} is enabled at debug level, so that callers can
+     * avoid installing a tracer at all otherwise.
+     */
+    public static boolean isEnabled() {
+        return Log.isLoggable(TAG, Log.DEBUG);
+    }
+
+    @Override
+    public void onInference(byte[] confidencePerLabel, TopKSelector selection,
+                            List<String> labels) {
+        int inference = mInferences.incrementAndGet();
+        if ((inference - 1) % mSampleInterval != 0) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder("Inference #").append(inference).append(':');
+        for (int rank = 0; rank < selection.size(); rank++) {
+            int index = selection.getIndex(rank);
+            sb.append(" [").append(index).append("] ").append(labels.get(index))
+                    .append(" (").append(Math.round(selection.getConfidence(rank) * 100))
+                    .append("%)");
+        }
+        Log.d(TAG, sb.toString());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the TensorFlow model and its labels from the app assets.
+ */
+public class ModelAssets {
+    private static final String MODEL_SUFFIX = ".tflite";
+
+    /**
+     * Memory-map the model file in Assets.
+     */
+    public static MappedByteBuffer loadModelFile(Context context, String modelFile)
+            throws IOException {
+        return mapAsset(context, modelFile);
+    }
+
+    /**
+     * Memory-map a label table compiled from the labels text file at build time.
+     */
+    public static LabelTable loadLabelTable(Context context, String tableFile)
+            throws IOException {
+        return LabelTable.wrap(mapAsset(context, tableFile));
+    }
+
+    /**
+     * @return the names of the model files in Assets, sorted.
+     */
+    public static List<String> listModels(Context context) throws IOException {
+        List<String> models = new ArrayList<>();
+        for (String asset : context.getAssets().list("")) {
+            if (asset.endsWith(MODEL_SUFFIX)) {
+                models.add(asset);
+            }
+        }
+        Collections.sort(models);
+        return models;
+    }
+
+    /**
+     * Memory-map a file in Assets, which must be stored uncompressed.
+     */
+    private static MappedByteBuffer mapAsset(Context context, String assetFile)
+            throws IOException {
+        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(assetFile);
+        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+        FileChannel fileChannel = inputStream.getChannel();
+        long startOffset = fileDescriptor.getStartOffset();
+        long declaredLength = fileDescriptor.getDeclaredLength();
+        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    }
+
+    public static List<String> readLabels(Context context, String labelsFile) {
+        try (InputStream is = context.getAssets().open(labelsFile)) {
+            return TensorFlowHelper.readLabels(is);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot read labels from " + labelsFile);
+        }
+    }
+}
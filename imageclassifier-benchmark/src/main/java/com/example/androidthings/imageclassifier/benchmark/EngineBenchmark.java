@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.benchmark;
+
+import com.example.androidthings.imageclassifier.classifier.BackendFactory;
+import com.example.androidthings.imageclassifier.classifier.ClassificationEngine;
+import com.example.androidthings.imageclassifier.classifier.ClassifierConfig;
+import com.example.androidthings.imageclassifier.classifier.FakeInferenceBackend;
+import com.example.androidthings.imageclassifier.classifier.InferenceBackend;
+import com.example.androidthings.imageclassifier.classifier.Recognition;
+import com.example.androidthings.imageclassifier.classifier.TensorFlowHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Queueing and hand-off overhead of the classification engine, with the model replaced by
+ * a deterministic backend of fixed latency. Per request time above the latency is the cost
+ * of the engine itself. Per request time of bursts should drop with the pool size up to the
+ * number of cores, and with the batch size since the latency is per inference.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    private static final int INPUT_SIZE = 224;
+    private static final int BURST = 16;
+
+    private static final ClassificationEngine.Callback IGNORE_RESULTS =
+            new ClassificationEngine.Callback() {
+                @Override
+                public void onClassificationComplete(Collection<Recognition> results) {
+                }
+            };
+
+    /** Simulated inference time, spent spinning like a CPU-bound model. */
+    @Param({"0", "1000000"})
+    public long latencyNanos;
+
+    /** Sessions running in parallel. */
+    @Param({"1", "4"})
+    public int poolSize;
+
+    /** Images per inference, gathered from the requests already queued. */
+    @Param({"1", "4"})
+    public int batchSize;
+
+    private ByteBuffer[] inputs;
+    private final ThreadLocal<Future<?>[]> futures = new ThreadLocal<Future<?>[]>() {
+        @Override
+        protected Future<?>[] initialValue() {
+            return new Future<?>[BURST];
+        }
+    };
+    private ClassificationEngine engine;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> labels =
+                TensorFlowHelper.readLabels(new ByteArrayInputStream(Synthetic.labelsFile()));
+        ClassifierConfig config = new ClassifierConfig.Builder()
+                .setInputSize(INPUT_SIZE, INPUT_SIZE)
+                .setPoolSize(poolSize)
+                .setBatchSize(batchSize)
+                .build();
+        final int numLabels = labels.size();
+        engine = new ClassificationEngine(new BackendFactory() {
+            @Override
+            public InferenceBackend create(int numThreads) {
+                return new FakeInferenceBackend(batchSize, INPUT_SIZE, INPUT_SIZE, numLabels,
+                        latencyNanos, true);
+            }
+        }, labels, config, null);
+
+        int[] pixels = Synthetic.argbPixels(INPUT_SIZE, INPUT_SIZE);
+        inputs = new ByteBuffer[BURST];
+        for (int i = 0; i < BURST; i++) {
+            // Distinct images, so that every request gets its own scores
+            pixels[i] ^= 0xffffff;
+            inputs[i] = ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3);
+            inputs[i].order(ByteOrder.nativeOrder());
+            TensorFlowHelper.convertPixelsToByteBuffer(pixels, pixels.length, inputs[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    /** One request at a time: submission, inference and delivery back to the caller. */
+    @Benchmark
+    public Collection<Recognition> roundTrip() throws InterruptedException, ExecutionException {
+        return engine.classify(inputs[0], IGNORE_RESULTS).get();
+    }
+
+    /** A burst of requests queued at once, as when frames arrive faster than inference. */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public Object burst() throws InterruptedException, ExecutionException {
+        return submitBurst();
+    }
+
+    /** Bursts from several producers contending for the same engine. */
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BURST)
+    public Object contendedBurst() throws InterruptedException, ExecutionException {
+        return submitBurst();
+    }
+
+    private Object submitBurst() throws InterruptedException, ExecutionException {
+        Future<?>[] pending = futures.get();
+        for (int i = 0; i < BURST; i++) {
+            pending[i] = engine.classify(inputs[i], IGNORE_RESULTS);
+        }
+        // With a pool the requests complete in any order, wait for all of them
+        Object results = null;
+        for (Future<?> future : pending) {
+            results = future.get();
+        }
+        return results;
+    }
+}
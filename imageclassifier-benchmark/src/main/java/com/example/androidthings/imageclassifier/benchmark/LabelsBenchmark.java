@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.benchmark;
+
+import com.example.androidthings.imageclassifier.classifier.LabelTable;
+import com.example.androidthings.imageclassifier.classifier.TensorFlowHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Loading of the 1001 labels shipped with the app: parsing of the labels.txt asset, versus
+ * opening the label table compiled from it and looking up the three labels of a result.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabelsBenchmark {
+    private byte[] labelsFile;
+    private ByteBuffer labelTable;
+
+    @Setup
+    public void setUp() throws IOException {
+        labelsFile = Synthetic.labelsFile();
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        LabelTable.write(TensorFlowHelper.readLabels(new ByteArrayInputStream(labelsFile)),
+                table);
+        // Direct, like the memory-mapped asset
+        labelTable = ByteBuffer.allocateDirect(table.size());
+        labelTable.put(table.toByteArray());
+        labelTable.flip();
+    }
+
+    @Benchmark
+    public List<String> readLabels() throws IOException {
+        return TensorFlowHelper.readLabels(new ByteArrayInputStream(labelsFile));
+    }
+
+    @Benchmark
+    public List<String> openLabelTable() {
+        return LabelTable.wrap(labelTable);
+    }
+
+    @Benchmark
+    public String openLabelTableAndLookUp() {
+        List<String> labels = LabelTable.wrap(labelTable);
+        labels.get(208);
+        labels.get(281);
+        return labels.get(954);
+    }
+}
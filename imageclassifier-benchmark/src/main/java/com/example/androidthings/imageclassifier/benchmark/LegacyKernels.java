@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.benchmark;
+
+import com.example.androidthings.imageclassifier.classifier.Recognition;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The kernels of TensorFlowHelper as they were before being optimized, kept as baselines for
+ * the benchmarks.
+ */
+final class LegacyKernels {
+    private static final int RESULTS_TO_SHOW = 3;
+
+    private LegacyKernels() {
+    }
+
+    /** TensorFlowHelper.getBestResults, with a priority queue over every label. */
+    static Collection<Recognition> getBestResults(byte[][] labelProbArray,
+                                                  List<String> labelList) {
+        PriorityQueue<Recognition> sortedLabels = new PriorityQueue<>(RESULTS_TO_SHOW,
+                new Comparator<Recognition>() {
+                    @Override
+                    public int compare(Recognition lhs, Recognition rhs) {
+                        return Float.compare(lhs.getConfidence(), rhs.getConfidence());
+                    }
+                });
+
+        for (int i = 0; i < labelList.size(); ++i) {
+            Recognition r = new Recognition(String.valueOf(i),
+                    labelList.get(i), (labelProbArray[0][i] & 0xff) / 255.0f);
+            sortedLabels.add(r);
+            if (sortedLabels.size() > RESULTS_TO_SHOW) {
+                sortedLabels.poll();
+            }
+        }
+
+        List<Recognition> results = new ArrayList<>(RESULTS_TO_SHOW);
+        for (Recognition r : sortedLabels) {
+            results.add(0, r);
+        }
+        return results;
+    }
+
+    /** TensorFlowHelper.convertBitmapToByteBuffer, once the pixels are out of the Bitmap. */
+    static void convertPixelsToByteBuffer(int[] intValues, int width, int height,
+                                          ByteBuffer imgData) {
+        imgData.rewind();
+        int pixel = 0;
+        for (int i = 0; i < width; ++i) {
+            for (int j = 0; j < height; ++j) {
+                final int val = intValues[pixel++];
+                imgData.put((byte) ((val >> 16) & 0xFF));
+                imgData.put((byte) ((val >> 8) & 0xFF));
+                imgData.put((byte) (val & 0xFF));
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.benchmark;
+
+import com.example.androidthings.imageclassifier.metrics.Counter;
+import com.example.androidthings.imageclassifier.metrics.Histogram;
+import com.example.androidthings.imageclassifier.metrics.MetricsRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of recording a measurement, paid on the frame path once per stage. Values vary from
+ * call to call so that every bucket range gets exercised, as with real latencies.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private Histogram histogram;
+    private Counter counter;
+    private long value;
+
+    @Setup
+    public void setUp() {
+        MetricsRegistry registry = new MetricsRegistry();
+        histogram = registry.histogram("latency");
+        counter = registry.counter("events");
+    }
+
+    /** A stage timing itself: reading the clock and recording the elapsed time. */
+    @Benchmark
+    public void recordSince() {
+        histogram.recordSince(System.nanoTime() - (value++ & 0xfffff));
+    }
+
+    /** Several stages recording into the same histogram. */
+    @Benchmark
+    @Threads(4)
+    public void contendedRecord() {
+        histogram.record(value++ & 0xfffff);
+    }
+
+    @Benchmark
+    public void increment() {
+        counter.increment();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.benchmark;
+
+import com.example.androidthings.imageclassifier.Pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams of items through a pipeline of three stages spinning for the same time, against
+ * the same work run back to back on one thread. With zero work, the per item time is the
+ * cost of the hand-offs. Otherwise, on a device with at least as many cores as stages, the
+ * pipeline should approach the time of a single stage rather than their sum.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final int STREAM = 64;
+    private static final int STAGES = 3;
+
+    /** Work per item and per stage, spent spinning. */
+    @Param({"0", "100000"})
+    public long workNanos;
+
+    private Pipeline<Integer> pipeline;
+    private final Integer item = 42;
+
+    @Setup
+    public void setUp() {
+        pipeline = new Pipeline<>("benchmark");
+        pipeline.begin("a", 4, new Work())
+                .then("b", 4, new Work())
+                .then("c", 4, new Work());
+        pipeline.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pipeline.stop(1, TimeUnit.SECONDS);
+    }
+
+    private class Work implements Pipeline.Processor<Integer, Integer> {
+        @Override
+        public Integer process(Integer input) {
+            spin(workNanos);
+            return input;
+        }
+
+        @Override
+        public void discard(Integer input) {
+        }
+    }
+
+    private static void spin(long nanos) {
+        final long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            // Busy, like a CPU-bound stage
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STREAM)
+    public int pipelined() {
+        for (int i = 0; i < STREAM; i++) {
+            while (!pipeline.offer(item)) {
+                Thread.yield();
+            }
+        }
+        while (!pipeline.isIdle()) {
+            Thread.yield();
+        }
+        return pipeline.getInFlightCount();
+    }
+
+    /** Baseline: every stage of every item on the calling thread. */
+    @Benchmark
+    @OperationsPerInvocation(STREAM)
+    public int serial() {
+        int sum = 0;
+        for (int i = 0; i < STREAM; i++) {
+            for (int stage = 0; stage < STAGES; stage++) {
+                spin(workNanos);
+            }
+            sum += item;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.benchmark;
+
+import com.example.androidthings.imageclassifier.CropScaleKernel;
+import com.example.androidthings.imageclassifier.ImageHash;
+import com.example.androidthings.imageclassifier.MotionGate;
+import com.example.androidthings.imageclassifier.YuvConverter;
+import com.example.androidthings.imageclassifier.classifier.TensorFlowHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a 640x480 camera frame into the 224x224x3 model input.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreprocessBenchmark {
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final int INPUT_SIZE = 224;
+
+    private int[] framePixels;
+    private int[] subsampledPixels;
+    private int[] inputPixels;
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private ByteBuffer imgData;
+
+    private CropScaleKernel nearest;
+    private CropScaleKernel bilinear;
+    private CropScaleKernel subsampledNearest;
+    private YuvConverter yuvConverter;
+    private ImageHash differenceHash;
+    private MotionGate motionGate;
+    private long frameTimestamp;
+
+    @Setup
+    public void setUp() {
+        framePixels = Synthetic.argbPixels(FRAME_WIDTH, FRAME_HEIGHT);
+        subsampledPixels = Synthetic.argbPixels(FRAME_WIDTH / 2, FRAME_HEIGHT / 2);
+        inputPixels = Synthetic.argbPixels(INPUT_SIZE, INPUT_SIZE);
+        // Semi-planar chroma, as delivered by most camera HALs
+        yPlane = Synthetic.plane(FRAME_WIDTH * FRAME_HEIGHT);
+        uPlane = Synthetic.plane(FRAME_WIDTH * FRAME_HEIGHT / 2 - 1);
+        vPlane = Synthetic.plane(FRAME_WIDTH * FRAME_HEIGHT / 2 - 1);
+        imgData = ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3);
+        imgData.order(ByteOrder.nativeOrder());
+
+        nearest = new CropScaleKernel(FRAME_WIDTH, FRAME_HEIGHT, INPUT_SIZE, INPUT_SIZE,
+                CropScaleKernel.NEAREST);
+        bilinear = new CropScaleKernel(FRAME_WIDTH, FRAME_HEIGHT, INPUT_SIZE, INPUT_SIZE,
+                CropScaleKernel.BILINEAR);
+        subsampledNearest = new CropScaleKernel(FRAME_WIDTH / 2, FRAME_HEIGHT / 2,
+                INPUT_SIZE, INPUT_SIZE, CropScaleKernel.NEAREST);
+        yuvConverter = new YuvConverter(FRAME_WIDTH, FRAME_HEIGHT, INPUT_SIZE, INPUT_SIZE);
+        differenceHash = new ImageHash(INPUT_SIZE, INPUT_SIZE, ImageHash.DIFFERENCE);
+        motionGate = new MotionGate(FRAME_WIDTH, FRAME_HEIGHT, 16, 0.02f, 10, TimeUnit.SECONDS);
+        // Something other than zeros to hash
+        yuvConvert();
+    }
+
+    @Benchmark
+    public ByteBuffer cropScaleNearest() {
+        nearest.apply(framePixels, imgData);
+        return imgData;
+    }
+
+    @Benchmark
+    public ByteBuffer cropScaleBilinear() {
+        bilinear.apply(framePixels, imgData);
+        return imgData;
+    }
+
+    /** The JPEG path, after a decode with inSampleSize 2. */
+    @Benchmark
+    public ByteBuffer cropScaleSubsampled() {
+        subsampledNearest.apply(subsampledPixels, imgData);
+        return imgData;
+    }
+
+    @Benchmark
+    public ByteBuffer yuvConvert() {
+        yuvConverter.convert(yPlane, FRAME_WIDTH, uPlane, vPlane, FRAME_WIDTH, 2, imgData);
+        return imgData;
+    }
+
+    /** The repack of an already cropped image, as done for Bitmap inputs. */
+    @Benchmark
+    public ByteBuffer convertToByteBuffer() {
+        TensorFlowHelper.convertPixelsToByteBuffer(inputPixels, inputPixels.length, imgData);
+        return imgData;
+    }
+
+    /** Baseline: the per-byte repack of an already cropped image. */
+    @Benchmark
+    public ByteBuffer legacyConvertToByteBuffer() {
+        LegacyKernels.convertPixelsToByteBuffer(inputPixels, INPUT_SIZE, INPUT_SIZE, imgData);
+        return imgData;
+    }
+
+    /** The perceptual hash looked up in the result cache before every inference. */
+    @Benchmark
+    public long imageHash() {
+        return differenceHash.compute(imgData);
+    }
+
+    /** The motion gate examining a still frame before any conversion. */
+    @Benchmark
+    public boolean motionGate() {
+        frameTimestamp += 33000000L;
+        return motionGate.accept(yPlane, FRAME_WIDTH, frameTimestamp);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic inputs for the benchmarks.
+ */
+final class Synthetic {
+    /** Number of outputs of the MobileNet model. */
+    static final int NUM_LABELS = 1001;
+    static final String LABELS_RESOURCE = "/labels.txt";
+
+    private static final long SEED = 42;
+
+    private Synthetic() {
+    }
+
+    /**
+     * A quantized score vector shaped like a real inference: mostly zeros and small values,
+     * with a handful of strong candidates.
+     */
+    static byte[] scores() {
+        Random random = new Random(SEED);
+        byte[] scores = new byte[NUM_LABELS];
+        for (int i = 0; i < NUM_LABELS; i++) {
+            scores[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(8) : 0);
+        }
+        for (int i = 0; i < 5; i++) {
+            scores[random.nextInt(NUM_LABELS)] = (byte) (64 + random.nextInt(192));
+        }
+        return scores;
+    }
+
+    /** Opaque ARGB pixels with smooth gradients and some noise. */
+    static int[] argbPixels(int width, int height) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = random.nextInt(256);
+                pixels[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return pixels;
+    }
+
+    /** One plane of random bytes, as returned by a camera Image. */
+    static ByteBuffer plane(int size) {
+        Random random = new Random(SEED);
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        ByteBuffer plane = ByteBuffer.allocateDirect(size);
+        plane.put(bytes);
+        plane.rewind();
+        return plane;
+    }
+
+    static byte[] labelsFile() throws IOException {
+        try (InputStream is = Synthetic.class.getResourceAsStream(LABELS_RESOURCE)) {
+            if (is == null) {
+                throw new IOException("Missing resource " + LABELS_RESOURCE);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.benchmark;
+
+import com.example.androidthings.imageclassifier.classifier.Recognition;
+import com.example.androidthings.imageclassifier.classifier.TensorFlowHelper;
+import com.example.androidthings.imageclassifier.classifier.TopKSelector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Post-processing of a 1001 label uint8 score vector into the best recognitions.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopKBenchmark {
+    private byte[] scores;
+    private byte[][] scoresBatch;
+    private List<String> labels;
+    private TopKSelector selector;
+
+    @Setup
+    public void setUp() throws IOException {
+        scores = Synthetic.scores();
+        scoresBatch = new byte[][] { scores };
+        labels = TensorFlowHelper.readLabels(new ByteArrayInputStream(Synthetic.labelsFile()));
+        selector = new TopKSelector(3, 0f);
+    }
+
+    /** Selection only, no result objects. */
+    @Benchmark
+    public int select() {
+        return selector.select(scores, labels.size());
+    }
+
+    /** Selection and Recognition objects for the winners. */
+    @Benchmark
+    public List<Recognition> bestResults() {
+        return TensorFlowHelper.getBestResults(scores, labels, selector);
+    }
+
+    /** Baseline: one Recognition per label through a priority queue. */
+    @Benchmark
+    public Collection<Recognition> legacyBestResults() {
+        return LegacyKernels.getBestResults(scoresBatch, labels);
+    }
+}
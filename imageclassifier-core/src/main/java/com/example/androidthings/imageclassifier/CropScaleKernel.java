@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns an ARGB pixel array into the RGB input of the TensorFlow model in a single pass:
+ * the center square of the source is cropped, resampled to the model size and split into
+ * 8 bit R, G, B channels, without any intermediate Bitmap.
+ *
+ * The source coordinates and interpolation weights are computed once, when the kernel is
+ * created for a source/destination size pair. A kernel is not thread safe.
+ */
+public class CropScaleKernel {
+    /** Pick the closest source pixel. */
+    public static final int NEAREST = 0;
+    /** Interpolate between the four closest source pixels. */
+    public static final int BILINEAR = 1;
+
+    private static final int DIM_PIXEL_SIZE = 3;
+    /** Interpolation weights are in 8 bit fixed point. */
+    private static final int WEIGHT_BITS = 8;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    private final int mSrcWidth;
+    private final int mSrcHeight;
+    private final int mDstWidth;
+    private final int mDstHeight;
+    private final int mSampling;
+
+    /** Left source column of every destination column, the right one and its weight. */
+    private final int[] mX0;
+    private final int[] mX1;
+    private final int[] mFx;
+    /** Offset of the top source row of every destination row, the bottom one and its weight. */
+    private final int[] mRow0;
+    private final int[] mRow1;
+    private final int[] mFy;
+
+    /** One row of output, written to the destination buffer in bulk. */
+    private final byte[] mRowBytes;
+
+    /**
+     * @param sampling {@link #NEAREST} or {@link #BILINEAR}.
+     */
+    public CropScaleKernel(int srcWidth, int srcHeight, int dstWidth, int dstHeight,
+                           int sampling) {
+        if (sampling != NEAREST && sampling != BILINEAR) {
+            throw new IllegalArgumentException("Unknown sampling " + sampling);
+        }
+        mSrcWidth = srcWidth;
+        mSrcHeight = srcHeight;
+        mDstWidth = dstWidth;
+        mDstHeight = dstHeight;
+        mSampling = sampling;
+
+        // We only want the center square out of the original rectangle.
+        final int minDim = Math.min(srcWidth, srcHeight);
+        final int offsetX = (srcWidth - minDim) / 2;
+        final int offsetY = (srcHeight - minDim) / 2;
+
+        mX0 = new int[dstWidth];
+        mX1 = new int[dstWidth];
+        mFx = new int[dstWidth];
+        fillTable(offsetX, minDim, dstWidth, 1, mX0, mX1, mFx);
+        mRow0 = new int[dstHeight];
+        mRow1 = new int[dstHeight];
+        mFy = new int[dstHeight];
+        fillTable(offsetY, minDim, dstHeight, srcWidth, mRow0, mRow1, mFy);
+
+        mRowBytes = new byte[dstWidth * DIM_PIXEL_SIZE];
+    }
+
+    private void fillTable(int offset, int srcSize, int dstSize, int stride,
+                           int[] lo, int[] hi, int[] weight) {
+        final float scale = (float) srcSize / dstSize;
+        for (int i = 0; i < dstSize; i++) {
+            // Sample at the center of the destination pixel
+            final float center = (i + 0.5f) * scale;
+            if (mSampling == NEAREST) {
+                final int src = Math.min(srcSize - 1, (int) center);
+                lo[i] = (offset + src) * stride;
+                hi[i] = lo[i];
+                weight[i] = 0;
+            } else {
+                final float pos = Math.max(0f, Math.min(srcSize - 1, center - 0.5f));
+                final int src = (int) pos;
+                lo[i] = (offset + src) * stride;
+                hi[i] = (offset + Math.min(srcSize - 1, src + 1)) * stride;
+                weight[i] = Math.round((pos - src) * WEIGHT_ONE);
+            }
+        }
+    }
+
+    /**
+     * Write the cropped and scaled image into {@code out} as packed R, G, B bytes.
+     *
+     * @param srcPixels ARGB pixels of the source, {@code srcWidth} per row.
+     * @param out       destination, at least {@code dstWidth * dstHeight * 3} bytes.
+     */
+    public void apply(int[] srcPixels, ByteBuffer out) {
+        if (srcPixels.length < mSrcWidth * mSrcHeight) {
+            throw new IllegalArgumentException("Expected " + mSrcWidth + "x" + mSrcHeight
+                    + " pixels, got " + srcPixels.length);
+        }
+        out.rewind();
+        if (mSampling == NEAREST) {
+            applyNearest(srcPixels, out);
+        } else {
+            applyBilinear(srcPixels, out);
+        }
+        out.rewind();
+    }
+
+    private void applyNearest(int[] src, ByteBuffer out) {
+        final byte[] row = mRowBytes;
+        for (int y = 0; y < mDstHeight; y++) {
+            final int rowOffset = mRow0[y];
+            for (int x = 0, i = 0; x < mDstWidth; x++) {
+                final int val = src[rowOffset + mX0[x]];
+                row[i++] = (byte) (val >> 16);
+                row[i++] = (byte) (val >> 8);
+                row[i++] = (byte) val;
+            }
+            out.put(row);
+        }
+    }
+
+    private void applyBilinear(int[] src, ByteBuffer out) {
+        final byte[] row = mRowBytes;
+        for (int y = 0; y < mDstHeight; y++) {
+            final int top = mRow0[y];
+            final int bottom = mRow1[y];
+            final int fy = mFy[y];
+            for (int x = 0, i = 0; x < mDstWidth; x++) {
+                final int x0 = mX0[x];
+                final int x1 = mX1[x];
+                final int fx = mFx[x];
+                final int p00 = src[top + x0];
+                final int p01 = src[top + x1];
+                final int p10 = src[bottom + x0];
+                final int p11 = src[bottom + x1];
+                row[i++] = (byte) lerp(p00 >> 16, p01 >> 16, p10 >> 16, p11 >> 16, fx, fy);
+                row[i++] = (byte) lerp(p00 >> 8, p01 >> 8, p10 >> 8, p11 >> 8, fx, fy);
+                row[i++] = (byte) lerp(p00, p01, p10, p11, fx, fy);
+            }
+            out.put(row);
+        }
+    }
+
+    /** Interpolate one channel, taken from the low 8 bits of each argument. */
+    private static int lerp(int p00, int p01, int p10, int p11, int fx, int fy) {
+        final int t = (p00 & 0xff) * (WEIGHT_ONE - fx) + (p01 & 0xff) * fx;
+        final int b = (p10 & 0xff) * (WEIGHT_ONE - fx) + (p11 & 0xff) * fx;
+        return (t * (WEIGHT_ONE - fy) + b * fy + (1 << (2 * WEIGHT_BITS - 1))) >> (2 * WEIGHT_BITS);
+    }
+
+    public int getSrcWidth() {
+        return mSrcWidth;
+    }
+
+    public int getSrcHeight() {
+        return mSrcHeight;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Computes a 64 bit perceptual hash of a model input, so that two images that look alike
+ * have hashes differing in only a few bits. The image is reduced to a grid of average
+ * luminance blocks, one bit per block:
+ * <ul>
+ *     <li>{@link #DIFFERENCE} (dHash) sets a bit when a block is brighter than its left
+ *     neighbour, over a 9x8 grid. It ignores global brightness changes such as the camera
+ *     adjusting its exposure.</li>
+ *     <li>{@link #AVERAGE} (aHash) sets a bit when a block is brighter than the mean of the
+ *     8x8 grid.</li>
+ * </ul>
+ *
+ * Only every other pixel of every other row is read, which leaves a few dozen samples per
+ * block at the model size. The block of every column and row is computed once, when the hash
+ * is created for an image size. A hash is not thread safe.
+ */
+public class ImageHash {
+    /** Compare every block with its left neighbour. */
+    public static final int DIFFERENCE = 0;
+    /** Compare every block with the mean of the grid. */
+    public static final int AVERAGE = 1;
+
+    private static final int DIM_PIXEL_SIZE = 3;
+    private static final int GRID_SIZE = 8;
+    private static final int SAMPLE_STEP = 2;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mKind;
+    private final int mColumns;
+
+    /** Grid column of every sampled source column, and grid row of every sampled row. */
+    private final int[] mColumnBlock;
+    private final int[] mRowBlock;
+    /** Samples per block, and the luminance summed over each of them. */
+    private final int[] mCounts;
+    private final int[] mSums;
+
+    /**
+     * @param width  image width, at least 9 pixels.
+     * @param height image height, at least 8 pixels.
+     * @param kind   {@link #DIFFERENCE} or {@link #AVERAGE}.
+     */
+    public ImageHash(int width, int height, int kind) {
+        if (kind != DIFFERENCE && kind != AVERAGE) {
+            throw new IllegalArgumentException("Unknown hash " + kind);
+        }
+        mWidth = width;
+        mHeight = height;
+        mKind = kind;
+        mColumns = kind == DIFFERENCE ? GRID_SIZE + 1 : GRID_SIZE;
+        if (width < mColumns * SAMPLE_STEP || height < GRID_SIZE * SAMPLE_STEP) {
+            throw new IllegalArgumentException(
+                    "Image too small to hash: " + width + "x" + height);
+        }
+
+        mColumnBlock = blocks(width, mColumns);
+        mRowBlock = blocks(height, GRID_SIZE);
+        mCounts = new int[mColumns * GRID_SIZE];
+        mSums = new int[mColumns * GRID_SIZE];
+        for (int y = 0; y < mRowBlock.length; y++) {
+            for (int x = 0; x < mColumnBlock.length; x++) {
+                mCounts[mRowBlock[y] * mColumns + mColumnBlock[x]]++;
+            }
+        }
+    }
+
+    /** Block of every sampled pixel along a side of the image split in {@code count}. */
+    private static int[] blocks(int size, int count) {
+        int[] blocks = new int[(size + SAMPLE_STEP - 1) / SAMPLE_STEP];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = i * SAMPLE_STEP * count / size;
+        }
+        return blocks;
+    }
+
+    /**
+     * @param rgb model input of the hash size, packed 8 bit R, G, B. Its position is ignored.
+     * @return the hash of the image.
+     */
+    public long compute(ByteBuffer rgb) {
+        final int[] sums = mSums;
+        Arrays.fill(sums, 0);
+        final int rowBytes = mWidth * DIM_PIXEL_SIZE;
+        for (int y = 0; y < mRowBlock.length; y++) {
+            final int rowOffset = y * SAMPLE_STEP * rowBytes;
+            final int blockOffset = mRowBlock[y] * mColumns;
+            for (int x = 0; x < mColumnBlock.length; x++) {
+                final int offset = rowOffset + x * SAMPLE_STEP * DIM_PIXEL_SIZE;
+                // Integer approximation of the BT.601 luma, scaled by 256
+                final int luma = 77 * (rgb.get(offset) & 0xFF)
+                        + 150 * (rgb.get(offset + 1) & 0xFF)
+                        + 29 * (rgb.get(offset + 2) & 0xFF);
+                sums[blockOffset + mColumnBlock[x]] += luma;
+            }
+        }
+        return mKind == DIFFERENCE ? differenceBits() : averageBits();
+    }
+
+    private long differenceBits() {
+        long hash = 0;
+        for (int row = 0; row < GRID_SIZE; row++) {
+            final int base = row * mColumns;
+            for (int column = 0; column < GRID_SIZE; column++) {
+                hash <<= 1;
+                // Compare the averages without dividing: a / na < b / nb
+                if ((long) mSums[base + column] * mCounts[base + column + 1]
+                        < (long) mSums[base + column + 1] * mCounts[base + column]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private long averageBits() {
+        long total = 0;
+        for (int sum : mSums) {
+            total += sum;
+        }
+        final long samples = (long) mRowBlock.length * mColumnBlock.length;
+        long hash = 0;
+        for (int i = 0; i < mSums.length; i++) {
+            hash <<= 1;
+            // Compare with the mean without dividing: sum / count > total / samples
+            if (mSums[i] * samples > total * mCounts[i]) {
+                hash |= 1;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return the number of bits that differ between two hashes, from 0 for images that look
+     * alike to 64.
+     */
+    public static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+}
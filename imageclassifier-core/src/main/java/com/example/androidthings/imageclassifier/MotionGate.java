@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a camera frame changed enough to be worth classifying, from its luminance
+ * plane alone, before it is converted into the model input.
+ *
+ * The center square of the frame, the part the model sees, is reduced to a 16x16 thumbnail,
+ * each cell averaging a 4x4 grid of luminance samples. The thumbnail is compared with a
+ * background: a frame passes when enough of its cells differ from it by more than the luma
+ * threshold. The background becomes the thumbnail of every frame that passes, so that a
+ * change is classified once rather than until the background catches up with it, and
+ * otherwise rolls an eighth of the way towards every frame skipped, so that slow changes
+ * such as daylight do not build up into a spurious pass.
+ *
+ * So that results do not go stale while nothing moves, a keep-alive frame passes whenever
+ * no frame has for the keep-alive interval. The first frame always passes.
+ *
+ * The sample coordinates are computed once per frame size. A gate is not thread safe.
+ */
+public class MotionGate {
+    private static final int THUMB_SIZE = 16;
+    private static final int SAMPLES_PER_CELL = 4;
+    /** The background moves by 1 / 2^BACKGROUND_SHIFT of the difference every frame. */
+    private static final int BACKGROUND_SHIFT = 3;
+
+    private final int mLumaThreshold;
+    private final int mAreaThreshold;
+    private final long mKeepAliveNanos;
+
+    /** Source column and row of every sample. */
+    private final int[] mSampleX;
+    private final int[] mSampleY;
+    /** Luma summed over the samples of every cell, for the frame and the background. */
+    private final int[] mThumb;
+    private final int[] mBackground;
+
+    private boolean mHasBackground;
+    private long mLastPassedNanos;
+    private float mLastChange;
+
+    /** Only written by the thread calling accept, read from any */
+    private volatile long mPassedCount;
+    private volatile long mKeepAliveCount;
+    private volatile long mSkippedCount;
+
+    /**
+     * @param lumaThreshold difference of average luminance, out of 255, for a cell to count
+     *                      as changed.
+     * @param areaThreshold fraction of the cells that must change for a frame to pass.
+     * @param keepAlive     longest time without a frame passing.
+     */
+    public MotionGate(int srcWidth, int srcHeight, int lumaThreshold, float areaThreshold,
+                      long keepAlive, TimeUnit unit) {
+        final int minDim = Math.min(srcWidth, srcHeight);
+        final int samples = THUMB_SIZE * SAMPLES_PER_CELL;
+        if (minDim < samples) {
+            throw new IllegalArgumentException(
+                    "Frame too small to gate: " + srcWidth + "x" + srcHeight);
+        }
+        if (areaThreshold < 0 || areaThreshold > 1) {
+            throw new IllegalArgumentException("Invalid area threshold " + areaThreshold);
+        }
+        mLumaThreshold = lumaThreshold;
+        mAreaThreshold = Math.round(areaThreshold * THUMB_SIZE * THUMB_SIZE);
+        mKeepAliveNanos = unit.toNanos(keepAlive);
+
+        // We only want the center square out of the original rectangle.
+        final int offsetX = (srcWidth - minDim) / 2;
+        final int offsetY = (srcHeight - minDim) / 2;
+        mSampleX = new int[samples];
+        mSampleY = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            mSampleX[i] = offsetX + (int) ((i + 0.5f) * minDim / samples);
+            mSampleY[i] = offsetY + (int) ((i + 0.5f) * minDim / samples);
+        }
+        mThumb = new int[THUMB_SIZE * THUMB_SIZE];
+        mBackground = new int[THUMB_SIZE * THUMB_SIZE];
+    }
+
+    /**
+     * Examine a frame and update the background.
+     *
+     * @param yPlane         luminance plane of the frame, one byte per pixel.
+     * @param rowStride      bytes between the start of two rows of the plane.
+     * @param timestampNanos capture time of the frame, from any monotonic clock.
+     * @return {@code true} if the frame should be classified.
+     */
+    public boolean accept(ByteBuffer yPlane, int rowStride, long timestampNanos) {
+        final int[] thumb = mThumb;
+        Arrays.fill(thumb, 0);
+        for (int i = 0; i < mSampleY.length; i++) {
+            final int rowOffset = mSampleY[i] * rowStride;
+            final int cellOffset = i / SAMPLES_PER_CELL * THUMB_SIZE;
+            for (int j = 0; j < mSampleX.length; j++) {
+                thumb[cellOffset + j / SAMPLES_PER_CELL] +=
+                        yPlane.get(rowOffset + mSampleX[j]) & 0xFF;
+            }
+        }
+
+        if (!mHasBackground) {
+            mHasBackground = true;
+            mLastChange = 1f;
+            return pass(timestampNanos);
+        }
+
+        final int threshold = mLumaThreshold * SAMPLES_PER_CELL * SAMPLES_PER_CELL;
+        final int[] background = mBackground;
+        int changed = 0;
+        for (int i = 0; i < thumb.length; i++) {
+            final int diff = thumb[i] - background[i];
+            if (diff > threshold || diff < -threshold) {
+                changed++;
+            }
+        }
+        mLastChange = (float) changed / thumb.length;
+
+        if (changed > 0 && changed >= mAreaThreshold) {
+            return pass(timestampNanos);
+        }
+        if (timestampNanos - mLastPassedNanos >= mKeepAliveNanos) {
+            mKeepAliveCount++;
+            return pass(timestampNanos);
+        }
+        for (int i = 0; i < thumb.length; i++) {
+            background[i] += (thumb[i] - background[i]) >> BACKGROUND_SHIFT;
+        }
+        mSkippedCount++;
+        return false;
+    }
+
+    private boolean pass(long timestampNanos) {
+        System.arraycopy(mThumb, 0, mBackground, 0, mThumb.length);
+        mLastPassedNanos = timestampNanos;
+        mPassedCount++;
+        return true;
+    }
+
+    /**
+     * Forget the background, so that the next frame passes. To be called when the frames
+     * stop being continuous, for instance when streaming restarts.
+     */
+    public void reset() {
+        mHasBackground = false;
+    }
+
+    /**
+     * @return the fraction of the thumbnail that changed in the last frame examined.
+     */
+    public float getLastChange() {
+        return mLastChange;
+    }
+
+    /** Frames that passed, including keep-alive ones. */
+    public long getPassedCount() {
+        return mPassedCount;
+    }
+
+    /** Frames that passed only because none had for the keep-alive interval. */
+    public long getKeepAliveCount() {
+        return mKeepAliveCount;
+    }
+
+    /** Frames that did not pass. */
+    public long getSkippedCount() {
+        return mSkippedCount;
+    }
+}
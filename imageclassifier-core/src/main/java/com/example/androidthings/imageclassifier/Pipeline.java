@@ -0,0 +1,367 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import com.example.androidthings.imageclassifier.metrics.Gauge;
+import com.example.androidthings.imageclassifier.metrics.Histogram;
+import com.example.androidthings.imageclassifier.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A chain of stages, each running on its own thread and taking its input from a bounded
+ * {@link SpscQueue} filled by the previous one, so that every stage works on a different
+ * item at the same time. Throughput is set by the slowest stage rather than by the sum of
+ * them all.
+ *
+ * A stage whose output queue is full waits for the next stage to make room, so a slow stage
+ * holds back those before it, up to the first queue: {@link #offer(Object)} then fails, and
+ * it is up to the producer to drop the item. A waiting thread is parked, and woken up by the
+ * other side of the queue.
+ *
+ * Items are passed from stage to stage, or dropped, in the order they were offered.
+ *
+ * @param <T> type of the items offered to the first stage.
+ */
+public class Pipeline<T> {
+    private static final String TAG = Pipeline.class.getSimpleName();
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    /**
+     * The work done by one stage.
+     */
+    public interface Processor<I, O> {
+        /**
+         * Called on the thread of the stage for every item of its queue.
+         *
+         * @return the item passed to the next stage, or {@code null} to drop it, in which case
+         * the processor is responsible for releasing the input.
+         */
+        O process(I input) throws Exception;
+
+        /**
+         * Release an input that will not be processed, because processing it threw or the
+         * pipeline stopped. Called on any thread.
+         */
+        void discard(I input);
+    }
+
+    /**
+     * One step of the pipeline, with its input queue and thread.
+     */
+    public final class Stage<I, O> implements Runnable {
+        private final String mName;
+        private final SpscQueue<I> mQueue;
+        private final Processor<I, O> mProcessor;
+        private final Stage<?, I> mPrevious;
+        private Stage<O, ?> mNext;
+        private Thread mThread;
+        /** Time spent processing each item, or null when not measured */
+        private Histogram mServiceTime;
+
+        /** Set by the stage thread while parked for input, or for room in the next queue */
+        private volatile boolean mWaitingForInput;
+        private volatile boolean mWaitingForRoom;
+
+        /** Only written by the stage thread */
+        private volatile long mProcessed;
+        private volatile long mDropped;
+        private volatile long mFailed;
+        private volatile long mBusyNanos;
+        private volatile long mDepthSum;
+        private volatile int mMaxDepth;
+        private volatile long mStartNanos;
+
+        private Stage(String name, int capacity, Processor<I, O> processor,
+                      Stage<?, I> previous) {
+            mName = name;
+            mQueue = new SpscQueue<>(capacity);
+            mProcessor = processor;
+            mPrevious = previous;
+        }
+
+        /**
+         * Append a stage taking the output of this one.
+         *
+         * @param capacity number of items queued between this stage and the new one.
+         */
+        public <N> Stage<O, N> then(String name, int capacity, Processor<O, N> processor) {
+            if (mNext != null) {
+                throw new IllegalStateException(mName + " already has a next stage");
+            }
+            Stage<O, N> next = new Stage<>(name, capacity, processor, this);
+            mNext = next;
+            mStages.add(next);
+            return next;
+        }
+
+        @Override
+        public void run() {
+            mStartNanos = System.nanoTime();
+            while (!mStopped) {
+                I input = mQueue.poll();
+                if (input == null) {
+                    awaitInput();
+                    continue;
+                }
+                final int depth = mQueue.size();
+                mDepthSum += depth;
+                if (depth > mMaxDepth) {
+                    mMaxDepth = depth;
+                }
+                if (mPrevious != null && mPrevious.mWaitingForRoom) {
+                    LockSupport.unpark(mPrevious.mThread);
+                }
+                process(input);
+            }
+        }
+
+        private void process(I input) {
+            final long start = System.nanoTime();
+            O output = null;
+            boolean failed = false;
+            try {
+                output = mProcessor.process(input);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, mName + " failed", e);
+                mProcessor.discard(input);
+                failed = true;
+            }
+            final long elapsed = System.nanoTime() - start;
+            mBusyNanos += elapsed;
+            mProcessed++;
+            if (mServiceTime != null) {
+                mServiceTime.record(elapsed);
+            }
+            if (failed) {
+                mFailed++;
+                mInFlight.decrementAndGet();
+            } else if (mNext == null) {
+                mInFlight.decrementAndGet();
+            } else if (output == null) {
+                mDropped++;
+                mInFlight.decrementAndGet();
+            } else if (!handOff(output)) {
+                mNext.mProcessor.discard(output);
+                mInFlight.decrementAndGet();
+            }
+        }
+
+        /** Queue an output for the next stage, waiting for room if needed. */
+        private boolean handOff(O output) {
+            final SpscQueue<O> queue = mNext.mQueue;
+            while (!queue.offer(output)) {
+                mWaitingForRoom = true;
+                if (queue.remainingCapacity() == 0 && !mStopped) {
+                    LockSupport.park(this);
+                }
+                mWaitingForRoom = false;
+                if (mStopped) {
+                    return false;
+                }
+            }
+            mNext.wake();
+            return true;
+        }
+
+        private void awaitInput() {
+            mWaitingForInput = true;
+            if (mQueue.isEmpty() && !mStopped) {
+                LockSupport.park(this);
+            }
+            mWaitingForInput = false;
+        }
+
+        /** Called by the producer after adding to the queue of this stage. */
+        private void wake() {
+            if (mWaitingForInput) {
+                LockSupport.unpark(mThread);
+            }
+        }
+
+        private StageStats getStats(long now) {
+            final long start = mStartNanos;
+            return new StageStats(mName, mProcessed, mDropped, mFailed, mBusyNanos,
+                    start == 0 ? 0 : now - start, mDepthSum, mMaxDepth, mQueue.size());
+        }
+
+        /** Discard what is left in the queue once the threads are gone. */
+        private void drain() {
+            I input;
+            while ((input = mQueue.poll()) != null) {
+                mProcessor.discard(input);
+                mInFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private final String mName;
+    private final List<Stage<?, ?>> mStages = new ArrayList<>();
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private Stage<T, ?> mFirst;
+    private volatile boolean mStopped;
+
+    /**
+     * @param name prefix of the names of the stage threads.
+     */
+    public Pipeline(String name) {
+        mName = name;
+    }
+
+    /**
+     * Create the first stage, to be followed by others with {@link Stage#then}.
+     *
+     * @param capacity number of items {@link #offer(Object)} can queue for this stage.
+     */
+    public <O> Stage<T, O> begin(String name, int capacity, Processor<T, O> processor) {
+        if (mFirst != null) {
+            throw new IllegalStateException("The pipeline already has a first stage");
+        }
+        Stage<T, O> first = new Stage<>(name, capacity, processor, null);
+        mFirst = first;
+        mStages.add(first);
+        return first;
+    }
+
+    /**
+     * Record the time every stage spends on each item, in nanoseconds, along with gauges of
+     * the queue depth of every stage and of the items in flight. Must be called once the
+     * stages are added and before {@link #start()}.
+     */
+    public void setMetrics(MetricsRegistry registry) {
+        for (final Stage<?, ?> stage : mStages) {
+            stage.mServiceTime = registry.histogram("stage_" + stage.mName);
+            registry.gauge("stage_" + stage.mName + "_queue_depth", new Gauge() {
+                @Override
+                public long getValue() {
+                    return stage.mQueue.size();
+                }
+            });
+        }
+        registry.gauge("pipeline_in_flight", new Gauge() {
+            @Override
+            public long getValue() {
+                return mInFlight.get();
+            }
+        });
+    }
+
+    /**
+     * Start a thread for every stage. The stages can not be changed afterwards.
+     */
+    public void start() {
+        if (mFirst == null) {
+            throw new IllegalStateException("The pipeline has no stage");
+        }
+        for (Stage<?, ?> stage : mStages) {
+            stage.mThread = new Thread(stage, mName + "-" + stage.mName);
+            stage.mThread.setDaemon(true);
+        }
+        for (Stage<?, ?> stage : mStages) {
+            stage.mThread.start();
+        }
+    }
+
+    /**
+     * Queue an item for the first stage. Only one thread may call this method.
+     *
+     * @return {@code false} if the first queue is full or the pipeline stopped, in which case
+     * the caller keeps the item.
+     */
+    public boolean offer(T item) {
+        if (mStopped) {
+            return false;
+        }
+        mInFlight.incrementAndGet();
+        if (!mFirst.mQueue.offer(item)) {
+            mInFlight.decrementAndGet();
+            return false;
+        }
+        mFirst.wake();
+        return true;
+    }
+
+    /**
+     * @return the number of items {@link #offer(Object)} can still queue. Exact from the
+     * thread offering them.
+     */
+    public int getRemainingCapacity() {
+        return mFirst.mQueue.remainingCapacity();
+    }
+
+    /**
+     * @return the number of items offered that have neither left the last stage nor been
+     * dropped yet.
+     */
+    public int getInFlightCount() {
+        return mInFlight.get();
+    }
+
+    public boolean isIdle() {
+        return mInFlight.get() == 0;
+    }
+
+    /**
+     * @return a snapshot of the activity of every stage, in pipeline order.
+     */
+    public List<StageStats> getStats() {
+        final long now = System.nanoTime();
+        List<StageStats> stats = new ArrayList<>(mStages.size());
+        for (Stage<?, ?> stage : mStages) {
+            stats.add(stage.getStats(now));
+        }
+        return stats;
+    }
+
+    /**
+     * Stop every stage, interrupting those processing an item, and discard the queued items.
+     *
+     * The producer must have stopped offering items, or the last ones may be left queued.
+     *
+     * @return {@code true} if every stage thread ended within the timeout. Otherwise the
+     * queues are left alone, since a stage may still be using them.
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        mStopped = true;
+        for (Stage<?, ?> stage : mStages) {
+            if (stage.mThread != null) {
+                stage.mThread.interrupt();
+            }
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Stage<?, ?> stage : mStages) {
+            if (stage.mThread == null) {
+                continue;
+            }
+            stage.mThread.join(Math.max(1,
+                    TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (stage.mThread.isAlive()) {
+                LOG.warning(stage.mName + " did not stop");
+                return false;
+            }
+        }
+        for (Stage<?, ?> stage : mStages) {
+            stage.drain();
+        }
+        return true;
+    }
+}
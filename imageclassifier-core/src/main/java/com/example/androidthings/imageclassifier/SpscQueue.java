@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue between exactly one producer thread and one consumer thread. Neither side
+ * ever blocks or locks: {@link #offer(Object)} fails when the queue is full and
+ * {@link #poll()} when it is empty, and nothing is allocated per element.
+ *
+ * Each side only writes its own index. It keeps a cached copy of the other index, refreshed
+ * only when the queue looks full, or empty, from that copy.
+ */
+public class SpscQueue<E> {
+    private final Object[] mBuffer;
+    private final int mMask;
+    private final int mCapacity;
+
+    /** Index of the next element to poll, only written by the consumer. */
+    private final AtomicLong mHead = new AtomicLong();
+    /** Index of the next element to offer, only written by the producer. */
+    private final AtomicLong mTail = new AtomicLong();
+    /** Last head seen by the producer. */
+    private long mHeadCache;
+    /** Last tail seen by the consumer. */
+    private long mTailCache;
+
+    /**
+     * @param capacity maximum number of elements in the queue, at least 1.
+     */
+    public SpscQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        mCapacity = capacity;
+        // A power of two, so that indices wrap with a mask
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mBuffer = new Object[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Add an element at the tail of the queue. Producer thread only.
+     *
+     * @return {@code false} if the queue is full.
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        final long tail = mTail.get();
+        if (tail - mHeadCache >= mCapacity) {
+            mHeadCache = mHead.get();
+            if (tail - mHeadCache >= mCapacity) {
+                return false;
+            }
+        }
+        mBuffer[(int) tail & mMask] = element;
+        mTail.set(tail + 1);
+        return true;
+    }
+
+    /**
+     * Take the element at the head of the queue. Consumer thread only.
+     *
+     * @return the element, or {@code null} if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        final long head = mHead.get();
+        if (head >= mTailCache) {
+            mTailCache = mTail.get();
+            if (head >= mTailCache) {
+                return null;
+            }
+        }
+        final int index = (int) head & mMask;
+        final E element = (E) mBuffer[index];
+        mBuffer[index] = null;
+        mHead.set(head + 1);
+        return element;
+    }
+
+    /**
+     * @return the number of elements in the queue. Exact from either side when the other one
+     * is idle, otherwise a snapshot.
+     */
+    public int size() {
+        final long size = mTail.get() - mHead.get();
+        return (int) Math.max(0, Math.min(size, mCapacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of elements that can be offered without failing. Exact from the
+     * producer, as the consumer can only make more room.
+     */
+    public int remainingCapacity() {
+        return mCapacity - size();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+}
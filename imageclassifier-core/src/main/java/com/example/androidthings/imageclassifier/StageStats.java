@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+/**
+ * A snapshot of the activity of one {@link Pipeline} stage.
+ */
+public class StageStats {
+    private final String mName;
+    private final long mProcessed;
+    private final long mDropped;
+    private final long mFailed;
+    private final long mBusyNanos;
+    private final long mElapsedNanos;
+    private final long mDepthSum;
+    private final int mMaxDepth;
+    private final int mDepth;
+
+    StageStats(String name, long processed, long dropped, long failed, long busyNanos,
+               long elapsedNanos, long depthSum, int maxDepth, int depth) {
+        mName = name;
+        mProcessed = processed;
+        mDropped = dropped;
+        mFailed = failed;
+        mBusyNanos = busyNanos;
+        mElapsedNanos = elapsedNanos;
+        mDepthSum = depthSum;
+        mMaxDepth = maxDepth;
+        mDepth = depth;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the number of items taken from the input queue, including those then dropped or
+     * failed.
+     */
+    public long getProcessedCount() {
+        return mProcessed;
+    }
+
+    /**
+     * @return the number of items the stage chose not to pass on.
+     */
+    public long getDroppedCount() {
+        return mDropped;
+    }
+
+    /**
+     * @return the number of items whose processing threw.
+     */
+    public long getFailedCount() {
+        return mFailed;
+    }
+
+    /**
+     * @return the average time spent processing an item.
+     */
+    public long getMeanServiceNanos() {
+        return mProcessed == 0 ? 0 : mBusyNanos / mProcessed;
+    }
+
+    /**
+     * @return the fraction of the time since the stage started spent processing items.
+     */
+    public float getUtilization() {
+        return mElapsedNanos == 0 ? 0f : (float) mBusyNanos / mElapsedNanos;
+    }
+
+    /**
+     * @return the average number of items left in the input queue when taking one.
+     */
+    public float getMeanQueueDepth() {
+        return mProcessed == 0 ? 0f : (float) mDepthSum / mProcessed;
+    }
+
+    public int getMaxQueueDepth() {
+        return mMaxDepth;
+    }
+
+    /**
+     * @return the number of items in the input queue when the snapshot was taken.
+     */
+    public int getQueueDepth() {
+        return mDepth;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d items, %d dropped, %d failed, %.2fms each, %.0f%% busy, "
+                        + "queue %d now, %.2f average, %d max",
+                mName, mProcessed, mDropped, mFailed, getMeanServiceNanos() / 1e6,
+                getUtilization() * 100, mDepth, getMeanQueueDepth(), mMaxDepth);
+    }
+}
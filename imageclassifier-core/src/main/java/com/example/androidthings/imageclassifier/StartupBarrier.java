@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs independent initialization tasks concurrently, timing each one in a
+ * {@link StartupTrace}, and signals once all of them are over.
+ *
+ * A task that throws is logged and counted as finished, so that one missing peripheral
+ * does not hold back the rest of the app.
+ *
+ * The barrier itself must be set up, started and awaited from a single thread.
+ */
+public class StartupBarrier {
+    private static final String TAG = StartupBarrier.class.getSimpleName();
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    private final StartupTrace mTrace;
+    private final List<String> mNames = new ArrayList<>();
+    private final List<Executor> mExecutors = new ArrayList<>();
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private CountDownLatch mDone;
+
+    /**
+     * @param trace receives the duration of every task, under its name.
+     */
+    public StartupBarrier(StartupTrace trace) {
+        mTrace = trace;
+    }
+
+    /**
+     * Add a task to run by {@link #start}.
+     *
+     * @param name     name of the task in the trace.
+     * @param executor runs the task. Tasks only overlap if their executors have a thread for
+     *                 each of them.
+     */
+    public StartupBarrier add(String name, Executor executor, Runnable task) {
+        if (mDone != null) {
+            throw new IllegalStateException("Already started");
+        }
+        mNames.add(name);
+        mExecutors.add(executor);
+        mTasks.add(task);
+        return this;
+    }
+
+    /**
+     * Run every task on its executor.
+     *
+     * @param onComplete run once all tasks are over, on the thread of the last one.
+     */
+    public void start(final Runnable onComplete) {
+        if (mDone != null) {
+            throw new IllegalStateException("Already started");
+        }
+        mDone = new CountDownLatch(1);
+        if (mTasks.isEmpty()) {
+            mDone.countDown();
+            onComplete.run();
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(mTasks.size());
+        for (int i = 0; i < mTasks.size(); i++) {
+            final String name = mNames.get(i);
+            final Runnable task = mTasks.get(i);
+            mExecutors.get(i).execute(new Runnable() {
+                @Override
+                public void run() {
+                    StartupTrace.Phase phase = mTrace.begin(name);
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOG.log(Level.SEVERE, "Startup task " + name + " failed", e);
+                    } finally {
+                        phase.end();
+                        if (remaining.decrementAndGet() == 0) {
+                            mDone.countDown();
+                            onComplete.run();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Wait until every task is over.
+     *
+     * @return {@code true} if they are, {@code false} if the timeout expired first.
+     * @throws IllegalStateException if the barrier has not been started.
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        if (mDone == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return mDone.await(timeout, unit);
+    }
+}
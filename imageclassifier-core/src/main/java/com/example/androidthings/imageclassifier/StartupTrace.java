@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timeline of the startup phases of the app, to see where the time to the first
+ * classification goes. Phases may overlap and run on any thread; times are relative to the
+ * creation of the trace.
+ */
+public class StartupTrace {
+    /**
+     * A phase being timed, closed by {@link #end()}.
+     */
+    public class Phase {
+        private final String mName;
+        private final long mStartNanos = System.nanoTime();
+
+        private Phase(String name) {
+            mName = name;
+        }
+
+        /**
+         * Record the phase as finished now.
+         */
+        public void end() {
+            record(mName, mStartNanos, System.nanoTime());
+        }
+    }
+
+    private static class Entry {
+        final String mName;
+        final String mThread;
+        final long mStartNanos;
+        final long mEndNanos;
+
+        Entry(String name, String thread, long startNanos, long endNanos) {
+            mName = name;
+            mThread = thread;
+            mStartNanos = startNanos;
+            mEndNanos = endNanos;
+        }
+    }
+
+    private final long mOriginNanos = System.nanoTime();
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    /**
+     * Start timing a phase.
+     */
+    public Phase begin(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Record an instant, such as the first result being shown.
+     */
+    public void mark(String name) {
+        long now = System.nanoTime();
+        record(name, now, now);
+    }
+
+    /**
+     * @return the time elapsed since the trace was created.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - mOriginNanos;
+    }
+
+    private synchronized void record(String name, long startNanos, long endNanos) {
+        mEntries.add(new Entry(name, Thread.currentThread().getName(), startNanos, endNanos));
+    }
+
+    /**
+     * @return one line per phase in the order they finished, with its start, end and
+     * duration in milliseconds since the creation of the trace.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("Startup trace:");
+        for (Entry entry : mEntries) {
+            sb.append(String.format("%n  %-24s %8.1f %8.1f %8.1fms  [%s]", entry.mName,
+                    (entry.mStartNanos - mOriginNanos) / 1e6,
+                    (entry.mEndNanos - mOriginNanos) / 1e6,
+                    (entry.mEndNanos - entry.mStartNanos) / 1e6, entry.mThread));
+        }
+        return sb.toString();
+    }
+}
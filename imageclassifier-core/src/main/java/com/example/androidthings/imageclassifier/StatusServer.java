@@ -0,0 +1,381 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A minimal HTTP server for diagnostics, bound to the loopback interface so that it is only
+ * reachable from the device itself, or from a workstation through {@code adb forward}.
+ *
+ * A single thread accepts connections and serves them with non-blocking I/O, one request per
+ * connection. GET resources write their body on that thread when requested, so nothing is
+ * computed ahead of time on the threads being observed. POST actions run on that thread
+ * too, and should only hand the work over to another thread.
+ *
+ * Resources and actions must be added before {@link #start()}.
+ */
+public class StatusServer {
+    private static final String TAG = StatusServer.class.getSimpleName();
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** Largest request accepted, headers and body included */
+    private static final int MAX_REQUEST_BYTES = 8192;
+    /** Connections served at the same time, others are closed right away */
+    private static final int MAX_CONNECTIONS = 8;
+    /** Connections idle for this long are closed */
+    private static final long IDLE_TIMEOUT_MS = 10000;
+
+    /**
+     * The body of a GET resource.
+     */
+    public interface Resource {
+        /**
+         * Called on the server thread for every request.
+         */
+        void write(StringBuilder body);
+    }
+
+    private static class Route {
+        final String mContentType;
+        final Resource mResource;
+        final Runnable mAction;
+
+        Route(String contentType, Resource resource, Runnable action) {
+            mContentType = contentType;
+            mResource = resource;
+            mAction = action;
+        }
+    }
+
+    /** A request being read, then its response being written. */
+    private static class Connection {
+        final ByteBuffer mRequest = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        ByteBuffer mResponse;
+        long mLastActiveNanos = System.nanoTime();
+    }
+
+    private final int mPort;
+    private final Map<String, Route> mRoutes = new HashMap<>();
+    private Selector mSelector;
+    private ServerSocketChannel mServerChannel;
+    private Thread mThread;
+    private volatile boolean mClosed;
+
+    /**
+     * @param port local port to listen on, or 0 for any free one.
+     */
+    public StatusServer(int port) {
+        mPort = port;
+    }
+
+    /**
+     * Serve a resource on GET requests for a path.
+     */
+    public void get(String path, String contentType, Resource resource) {
+        addRoute(path, new Route(contentType, resource, null));
+    }
+
+    /**
+     * Run an action on POST requests for a path, answered with 202 Accepted.
+     */
+    public void post(String path, Runnable action) {
+        addRoute(path, new Route(null, null, action));
+    }
+
+    private void addRoute(String path, Route route) {
+        if (mThread != null) {
+            throw new IllegalStateException("The server has already started");
+        }
+        mRoutes.put(path, route);
+    }
+
+    /**
+     * Bind the port and start serving on a thread of its own.
+     *
+     * @throws IOException if the port can not be bound.
+     */
+    public void start() throws IOException {
+        if (mThread != null) {
+            throw new IllegalStateException("The server has already started");
+        }
+        mSelector = Selector.open();
+        try {
+            mServerChannel = ServerSocketChannel.open();
+            mServerChannel.socket().setReuseAddress(true);
+            mServerChannel.socket().bind(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), mPort));
+            mServerChannel.configureBlocking(false);
+            mServerChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            closeQuietly();
+            throw e;
+        }
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, TAG);
+        mThread.setDaemon(true);
+        mThread.start();
+        LOG.info("Serving on port " + getPort());
+    }
+
+    /**
+     * @return the port being listened on, -1 until started.
+     */
+    public int getPort() {
+        return mServerChannel != null ? mServerChannel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Stop serving and close every connection. Requests being served are abandoned.
+     */
+    public void close() {
+        mClosed = true;
+        if (mSelector != null) {
+            mSelector.wakeup();
+        }
+    }
+
+    private void serve() {
+        try {
+            while (!mClosed) {
+                mSelector.select(IDLE_TIMEOUT_MS / 2);
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        } else if (key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        // The client went away
+                        LOG.log(Level.FINE, "Connection failed", e);
+                        close(key);
+                    }
+                }
+                closeIdle();
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Status server failed", e);
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = mServerChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        // The server socket holds one key, every other one is a connection
+        if (mSelector.keys().size() > MAX_CONNECTIONS) {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(mSelector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (((SocketChannel) key.channel()).read(connection.mRequest) < 0) {
+            close(key);
+            return;
+        }
+        connection.mLastActiveNanos = System.nanoTime();
+        ByteBuffer response = respond(connection.mRequest);
+        if (response != null) {
+            connection.mResponse = response;
+            key.interestOps(SelectionKey.OP_WRITE);
+            write(key);
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ((SocketChannel) key.channel()).write(connection.mResponse);
+        connection.mLastActiveNanos = System.nanoTime();
+        if (!connection.mResponse.hasRemaining()) {
+            close(key);
+        }
+    }
+
+    /**
+     * @return the response to the request read so far, or {@code null} if it is not
+     * complete yet.
+     */
+    private ByteBuffer respond(ByteBuffer request) {
+        final int headerEnd = indexOfHeaderEnd(request);
+        if (headerEnd < 0) {
+            return request.hasRemaining() ? null
+                    : response("413 Payload Too Large", "text/plain", "Request too large\n");
+        }
+        final String header = new String(request.array(), 0, headerEnd, ASCII);
+        final String[] lines = header.split("\r\n");
+        final String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            return response("400 Bad Request", "text/plain", "Bad request\n");
+        }
+        final int bodyLength = getContentLength(lines);
+        if (bodyLength < 0) {
+            return response("400 Bad Request", "text/plain", "Bad content length\n");
+        }
+        if (headerEnd + 4 + bodyLength > request.capacity()) {
+            return response("413 Payload Too Large", "text/plain", "Request too large\n");
+        }
+        if (headerEnd + 4 + bodyLength > request.position()) {
+            // The body is ignored, but read so that closing does not reset the connection
+            return null;
+        }
+        final String method = requestLine[0];
+        String path = requestLine[1];
+        final int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        final Route route = mRoutes.get(path);
+        if (route == null) {
+            return response("404 Not Found", "text/plain", "Not found\n");
+        }
+        try {
+            if (route.mResource != null && method.equals("GET")) {
+                StringBuilder body = new StringBuilder();
+                route.mResource.write(body);
+                return response("200 OK", route.mContentType, body);
+            }
+            if (route.mAction != null && method.equals("POST")) {
+                route.mAction.run();
+                return response("202 Accepted", "text/plain", "Accepted\n");
+            }
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, method + " " + path + " failed", e);
+            return response("500 Internal Server Error", "text/plain", "Failed\n");
+        }
+        return response("405 Method Not Allowed", "text/plain", "Method not allowed\n");
+    }
+
+    /**
+     * @return the position of the blank line ending the headers, or -1 if not read yet.
+     */
+    private static int indexOfHeaderEnd(ByteBuffer request) {
+        final byte[] bytes = request.array();
+        for (int i = 0; i + 3 < request.position(); i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n'
+                    && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the length of the request body, 0 if there is none, or -1 if invalid.
+     */
+    private static int getContentLength(String[] headerLines) {
+        for (int i = 1; i < headerLines.length; i++) {
+            final int colon = headerLines[i].indexOf(':');
+            if (colon > 0 && headerLines[i].substring(0, colon).trim()
+                    .equalsIgnoreCase("Content-Length")) {
+                try {
+                    return Math.max(-1,
+                            Integer.parseInt(headerLines[i].substring(colon + 1).trim()));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static ByteBuffer response(String status, String contentType, CharSequence body) {
+        final byte[] content = body.toString().getBytes(UTF8);
+        final String header = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + content.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        final byte[] head = header.getBytes(ASCII);
+        ByteBuffer response = ByteBuffer.allocate(head.length + content.length);
+        response.put(head).put(content).flip();
+        return response;
+    }
+
+    private void closeIdle() {
+        final long now = System.nanoTime();
+        for (SelectionKey key : mSelector.keys()) {
+            final Object attachment = key.attachment();
+            if (attachment instanceof Connection && now - ((Connection) attachment)
+                    .mLastActiveNanos > TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS)) {
+                close(key);
+            }
+        }
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+
+    private void closeQuietly() {
+        if (mSelector != null) {
+            for (SelectionKey key : mSelector.keys()) {
+                close(key);
+            }
+            try {
+                mSelector.close();
+            } catch (IOException e) {
+                // Closed anyway
+            }
+        }
+        if (mServerChannel != null) {
+            try {
+                mServerChannel.close();
+            } catch (IOException e) {
+                // Closed anyway
+            }
+        }
+    }
+}
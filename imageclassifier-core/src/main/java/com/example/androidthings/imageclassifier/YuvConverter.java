@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts YUV_420_888 camera frames straight into the RGB input of the TensorFlow model,
+ * cropping the center square of the frame and scaling it with nearest neighbor sampling.
+ *
+ * The converter only depends on {@link ByteBuffer}, so it can be fed synthetic planes.
+ * The source coordinates are computed once per frame/model size pair.
+ */
+public class YuvConverter {
+    private final int mSrcWidth;
+    private final int mSrcHeight;
+    private final int mDstWidth;
+    private final int mDstHeight;
+
+    /** Source column of every destination column, and the matching chroma column. */
+    private final int[] mSrcX;
+    private final int[] mSrcUvX;
+    /** Source row of every destination row, and the matching chroma row. */
+    private final int[] mSrcY;
+    private final int[] mSrcUvY;
+
+    public YuvConverter(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        mSrcWidth = srcWidth;
+        mSrcHeight = srcHeight;
+        mDstWidth = dstWidth;
+        mDstHeight = dstHeight;
+
+        // We only want the center square out of the original rectangle.
+        final int minDim = Math.min(srcWidth, srcHeight);
+        final int offsetX = (srcWidth - minDim) / 2;
+        final int offsetY = (srcHeight - minDim) / 2;
+
+        mSrcX = new int[dstWidth];
+        mSrcUvX = new int[dstWidth];
+        for (int x = 0; x < dstWidth; x++) {
+            mSrcX[x] = offsetX + (int) ((x + 0.5f) * minDim / dstWidth);
+            mSrcUvX[x] = mSrcX[x] >> 1;
+        }
+        mSrcY = new int[dstHeight];
+        mSrcUvY = new int[dstHeight];
+        for (int y = 0; y < dstHeight; y++) {
+            mSrcY[y] = offsetY + (int) ((y + 0.5f) * minDim / dstHeight);
+            mSrcUvY[y] = mSrcY[y] >> 1;
+        }
+    }
+
+    /**
+     * Write the cropped and scaled frame into {@code out} as packed 8 bit R, G, B triplets,
+     * row by row. The source buffers are read with absolute gets, so their positions are
+     * left untouched.
+     *
+     * @param yPlane        luma plane, one byte per pixel.
+     * @param yRowStride    bytes between two rows of the luma plane.
+     * @param uPlane        Cb plane, subsampled by two in both directions.
+     * @param vPlane        Cr plane, subsampled by two in both directions.
+     * @param uvRowStride   bytes between two rows of the chroma planes.
+     * @param uvPixelStride bytes between two pixels of the chroma planes, 1 or 2.
+     * @param out           destination, at least {@code dstWidth * dstHeight * 3} bytes.
+     */
+    public void convert(ByteBuffer yPlane, int yRowStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        ByteBuffer out) {
+        out.rewind();
+        for (int y = 0; y < mDstHeight; y++) {
+            final int yRow = mSrcY[y] * yRowStride;
+            final int uvRow = mSrcUvY[y] * uvRowStride;
+            for (int x = 0; x < mDstWidth; x++) {
+                final int uvIndex = uvRow + mSrcUvX[x] * uvPixelStride;
+                final int luma = yPlane.get(yRow + mSrcX[x]) & 0xff;
+                final int cb = (uPlane.get(uvIndex) & 0xff) - 128;
+                final int cr = (vPlane.get(uvIndex) & 0xff) - 128;
+
+                // Full range BT.601, as produced by the camera, in 10 bit fixed point.
+                out.put(clamp(luma + ((1436 * cr) >> 10)));
+                out.put(clamp(luma - ((352 * cb + 731 * cr) >> 10)));
+                out.put(clamp(luma + ((1815 * cb) >> 10)));
+            }
+        }
+        out.rewind();
+    }
+
+    private static byte clamp(int value) {
+        return (byte) (value < 0 ? 0 : (value > 255 ? 255 : value));
+    }
+
+    public int getSrcWidth() {
+        return mSrcWidth;
+    }
+
+    public int getSrcHeight() {
+        return mSrcHeight;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+/**
+ * Creates {@link InferenceBackend backends} of the same model, for engines that choose the
+ * execution options at startup.
+ */
+public interface BackendFactory {
+    /**
+     * @param numThreads number of threads a single run may use, or
+     *                   {@link ClassifierConfig#NUM_THREADS_DEFAULT} to leave it to the runtime.
+     * @return a new backend, owned by the caller.
+     */
+    InferenceBackend create(int numThreads);
+}
@@ -0,0 +1,694 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import com.example.androidthings.imageclassifier.metrics.Counter;
+import com.example.androidthings.imageclassifier.metrics.Histogram;
+import com.example.androidthings.imageclassifier.metrics.MetricsRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the model on dedicated worker threads, so that inference never blocks the thread
+ * that captured the image. Results are handed back through a {@link Callback} on the
+ * {@link Executor} given at construction time, on Android usually one posting to the UI
+ * thread.
+ *
+ * The engine holds a pool of sessions, one per worker thread, all running the same model.
+ * Each request is dispatched to whichever session is free, so with a pool of more than one
+ * session, requests may complete in a different order than they were submitted.
+ *
+ * When the model takes batches of several images, a free session gathers queued requests
+ * until its batch is full or the first request has waited for the configured timeout, then
+ * runs them all at once.
+ */
+public class ClassificationEngine {
+    private static final String TAG = ClassificationEngine.class.getSimpleName();
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    /**
+     * Receives the outcome of a classification request.
+     */
+    public interface Callback {
+        /**
+         * Called once per request on the callback executor.
+         *
+         * @param results the best recognitions, or {@code null} if inference failed.
+         */
+        void onClassificationComplete(Collection<Recognition> results);
+    }
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    /**
+     * An image waiting for classification. The future is completed by the worker that ran it.
+     */
+    private static class Request extends FutureTask<Collection<Recognition>> {
+        final int[] mArgbPixels;
+        final ByteBuffer mInput;
+        final Callback mCallback;
+        final long mSubmitNanos = System.nanoTime();
+
+        Request(int[] argbPixels, ByteBuffer input, Callback callback) {
+            super(NOTHING, null);
+            mArgbPixels = argbPixels;
+            mInput = input;
+            mCallback = callback;
+        }
+
+        /** Copy this image into the batch of the session. */
+        void load(ClassifierSession session, int index) {
+            if (mArgbPixels != null) {
+                session.setInput(index, mArgbPixels);
+            } else {
+                session.setInput(index, mInput);
+            }
+        }
+
+        void complete(Collection<Recognition> results, Throwable error) {
+            if (error == null) {
+                set(results);
+            } else {
+                setException(error);
+            }
+        }
+    }
+
+    /**
+     * A session of the pool with the state needed to run a batch and post-process its
+     * results. Only used by the worker that took it from the free queue.
+     */
+    private static class Slot {
+        final int mIndex;
+        final ClassifierSession mSession;
+        final TopKSelector mTopK;
+        final Request[] mBatch;
+        final List<Collection<Recognition>> mResults;
+        final long mStartNanos = System.nanoTime();
+        volatile long mRuns;
+        volatile long mImages;
+        volatile long mBusyNanos;
+
+        Slot(int index, ClassifierSession session, ClassifierConfig config) {
+            mIndex = index;
+            mSession = session;
+            mTopK = new TopKSelector(config.getMaxResults(), config.getMinConfidence());
+            mBatch = new Request[session.getBatchSize()];
+            mResults = new ArrayList<>(session.getBatchSize());
+        }
+    }
+
+    /**
+     * The metrics recorded by the workers, looked up once when they are installed.
+     */
+    private static class Metrics {
+        final Histogram mQueueWait;
+        final Histogram mTensorFill;
+        final Histogram mInference;
+        final Histogram mTopK;
+        final Counter mImages;
+        final Counter mFailures;
+
+        Metrics(MetricsRegistry registry) {
+            mQueueWait = registry.histogram("classifier_queue_wait");
+            mTensorFill = registry.histogram("classifier_tensor_fill");
+            mInference = registry.histogram("classifier_inference");
+            mTopK = registry.histogram("classifier_topk");
+            mImages = registry.counter("classifier_images");
+            mFailures = registry.counter("classifier_failures");
+        }
+    }
+
+    private final List<String> mLabels;
+    private final ClassifierConfig mConfig;
+    private final Executor mCallbackExecutor;
+    private final ThreadPoolExecutor mExecutor;
+    private final long mBatchTimeoutNanos;
+    private volatile ClassificationTracer mTracer;
+    private volatile Metrics mMetrics;
+
+    /** Requests not taken by a worker yet. */
+    private final BlockingQueue<Request> mPending = new LinkedBlockingQueue<>();
+    /** Run by the workers once per request, to take it along with a batch of others. */
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /** Every session of the pool, empty if the backend failed to start. */
+    private volatile Slot[] mSlots;
+    /** Sessions not running an inference. */
+    private final BlockingQueue<Slot> mFreeSlots = new LinkedBlockingQueue<>();
+    /** Released once the sessions have been opened, or failed to. */
+    private final CountDownLatch mStarted = new CountDownLatch(1);
+    private volatile int mNumThreads = ClassifierConfig.NUM_THREADS_CALIBRATE;
+
+    /**
+     * Requests that have been submitted but whose results have not been delivered yet.
+     */
+    private final AtomicInteger mInFlight = new AtomicInteger();
+
+    /** Set once the workers have stopped and the backends are closed. */
+    private volatile boolean mTerminated;
+    /** Run once terminated, see {@link #close(Runnable)}. */
+    private final AtomicReference<Runnable> mOnTerminated = new AtomicReference<>();
+
+    /**
+     * Create an engine running an existing backend, ignoring the thread count, pool size and
+     * warm-up of the configuration. It is {@link #isReady() ready} right away.
+     *
+     * @param backend          the model to run. Owned by the engine from now on and closed
+     *                         by {@link #close()}.
+     * @param labels           labels matching the model outputs.
+     * @param config           input size and result filtering settings.
+     * @param callbackExecutor executor on which the callbacks are delivered, or {@code null}
+     *                         to deliver them directly on the worker thread. It should throw
+     *                         {@link RejectedExecutionException} once nobody is listening.
+     * @throws IllegalArgumentException if the backend does not match the labels or the
+     *                                  configured input size.
+     */
+    public ClassificationEngine(InferenceBackend backend, List<String> labels,
+                                ClassifierConfig config, Executor callbackExecutor) {
+        this(labels, config, 1, callbackExecutor);
+        mNumThreads = ClassifierConfig.NUM_THREADS_DEFAULT;
+        publish(new Slot[] {new Slot(0, openSession(backend), config)});
+    }
+
+    /**
+     * Create an engine whose pool of backends is created on a worker thread, with the thread
+     * count and pool size of the configuration. The calibration and warm-up runs asked for by
+     * the configuration also happen on the worker thread. Requests submitted in the meantime
+     * wait for them, and the engine is neither {@link #isIdle() idle} nor
+     * {@link #isReady() ready} until they are over.
+     *
+     * @param factory          creates the backends to run, which are owned by the engine and
+     *                         closed by {@link #close()}.
+     * @param labels           labels matching the model outputs.
+     * @param config           input size, execution and result filtering settings.
+     * @param callbackExecutor executor on which the callbacks are delivered, or {@code null}
+     *                         to deliver them directly on the worker thread.
+     */
+    public ClassificationEngine(final BackendFactory factory, List<String> labels,
+                                ClassifierConfig config, Executor callbackExecutor) {
+        this(labels, config, config.getPoolSize(), callbackExecutor);
+        mInFlight.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    start(factory);
+                } catch (RuntimeException e) {
+                    LOG.log(Level.SEVERE, "Unable to start the classifier", e);
+                } finally {
+                    if (mSlots == null) {
+                        // Failed, let the queued requests fail too rather than wait forever
+                        publish(new Slot[0]);
+                    }
+                    mInFlight.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private ClassificationEngine(List<String> labels, ClassifierConfig config, int poolSize,
+                                 Executor callbackExecutor) {
+        mLabels = labels;
+        mConfig = config;
+        mCallbackExecutor = callbackExecutor;
+        mBatchTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getBatchTimeoutMillis());
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, TAG + "-" + mCount.getAndIncrement());
+                    }
+                }) {
+            @Override
+            protected void terminated() {
+                // Every queued request has run, the backends can go
+                for (Slot slot : mSlots) {
+                    slot.mSession.close();
+                }
+                mTerminated = true;
+                runOnTerminated();
+            }
+        };
+    }
+
+    private void start(BackendFactory factory) {
+        int poolSize = mConfig.getPoolSize();
+        int numThreads = mConfig.getNumThreads();
+        if (numThreads == ClassifierConfig.NUM_THREADS_CALIBRATE) {
+            if (mConfig.getUseNnapi()) {
+                // The accelerator does its own scheduling, there is nothing to calibrate
+                numThreads = ClassifierConfig.NUM_THREADS_DEFAULT;
+            } else {
+                // The cores are shared by the sessions of the pool
+                int maxThreads = Math.max(1,
+                        Runtime.getRuntime().availableProcessors() / poolSize);
+                ThreadCalibration calibration = ThreadCalibration.run(factory, maxThreads,
+                        ThreadCalibration.DEFAULT_WARMUP_RUNS,
+                        ThreadCalibration.DEFAULT_TIMED_RUNS);
+                LOG.info(calibration.toString());
+                numThreads = calibration.getBestNumThreads();
+            }
+        }
+        Slot[] slots = new Slot[poolSize];
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                slots[i] = new Slot(i, openSession(factory.create(numThreads)), mConfig);
+            }
+        } catch (RuntimeException e) {
+            for (Slot slot : slots) {
+                if (slot != null) {
+                    slot.mSession.close();
+                }
+            }
+            throw e;
+        }
+        mNumThreads = numThreads;
+        warmUp(slots);
+        publish(slots);
+    }
+
+    private void warmUp(Slot[] slots) {
+        int runs = mConfig.getWarmupRuns();
+        if (runs == 0) {
+            return;
+        }
+        // Same path as real requests, so that the conversion and selection code gets compiled
+        int[] blank = new int[mConfig.getInputWidth() * mConfig.getInputHeight()];
+        long start = System.nanoTime();
+        long first = 0;
+        long last = 0;
+        for (Slot slot : slots) {
+            ClassifierSession session = slot.mSession;
+            for (int i = 0; i < runs; i++) {
+                long runStart = System.nanoTime();
+                byte[][] confidencePerLabel;
+                if (session.getBatchSize() == 1) {
+                    confidencePerLabel = session.run(blank);
+                } else {
+                    for (int b = 0; b < session.getBatchSize(); b++) {
+                        session.setInput(b, blank);
+                    }
+                    confidencePerLabel = session.run();
+                }
+                TensorFlowHelper.getBestResults(confidencePerLabel[0], mLabels, slot.mTopK);
+                last = System.nanoTime() - runStart;
+                if (first == 0) {
+                    first = last;
+                }
+            }
+        }
+        LOG.info(String.format("Warmed up %d sessions with %d runs in %.1fms, "
+                        + "first run %.1fms, last run %.1fms", slots.length, runs,
+                (System.nanoTime() - start) / 1e6, first / 1e6, last / 1e6));
+    }
+
+    private ClassifierSession openSession(InferenceBackend backend) {
+        ClassifierSession session = new ClassifierSession(backend);
+        if (session.getBatchSize() != mConfig.getBatchSize()
+                || session.getInputWidth() != mConfig.getInputWidth()
+                || session.getInputHeight() != mConfig.getInputHeight()
+                || session.getNumLabels() != mLabels.size()) {
+            session.close();
+            throw new IllegalArgumentException("Model takes batches of "
+                    + session.getBatchSize() + " " + session.getInputWidth() + "x"
+                    + session.getInputHeight() + " images to " + session.getNumLabels()
+                    + " labels, configured for batches of " + mConfig.getBatchSize() + " "
+                    + mConfig.getInputWidth() + "x" + mConfig.getInputHeight() + " images to "
+                    + mLabels.size() + " labels");
+        }
+        return session;
+    }
+
+    private void publish(Slot[] slots) {
+        mSlots = slots;
+        Collections.addAll(mFreeSlots, slots);
+        mStarted.countDown();
+    }
+
+    /**
+     * Queue an image for classification. The pixels must not be modified until the
+     * callback has been invoked.
+     *
+     * @param argbPixels the image pixels as packed ARGB, of exactly the model input size.
+     * @return a {@link Future} completing with the same results handed to the callback.
+     * @throws RejectedExecutionException if the engine has been closed.
+     */
+    public Future<Collection<Recognition>> classify(int[] argbPixels, Callback callback) {
+        return submit(new Request(argbPixels, null, callback));
+    }
+
+    /**
+     * Queue an input already in the model format, as produced by the image preprocessor.
+     * The buffer must not be modified until the callback has been invoked.
+     *
+     * @param input direct buffer in native order holding packed RGB bytes of the model size.
+     * @return a {@link Future} completing with the same results handed to the callback.
+     * @throws RejectedExecutionException if the engine has been closed.
+     */
+    public Future<Collection<Recognition>> classify(ByteBuffer input, Callback callback) {
+        return submit(new Request(null, input, callback));
+    }
+
+    private Future<Collection<Recognition>> submit(Request request) {
+        mInFlight.incrementAndGet();
+        mPending.add(request);
+        try {
+            mExecutor.execute(mDrain);
+        } catch (RejectedExecutionException e) {
+            // Unless a worker finishing the queue took it along with its batch
+            if (mPending.remove(request)) {
+                mInFlight.decrementAndGet();
+                throw e;
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Install a diagnostics hook called after every inference, or remove it with
+     * {@code null}.
+     */
+    public void setTracer(ClassificationTracer tracer) {
+        mTracer = tracer;
+    }
+
+    /**
+     * Record the time requests spend queued, being copied into the input tensor, in the
+     * interpreter and in the top-K selection, or stop recording with {@code null}.
+     * Times are in nanoseconds.
+     */
+    public void setMetrics(MetricsRegistry registry) {
+        mMetrics = registry != null ? new Metrics(registry) : null;
+    }
+
+    /**
+     * @return the number of threads a single inference uses, as configured or calibrated.
+     * {@link ClassifierConfig#NUM_THREADS_DEFAULT} if it is left to the backend, and
+     * {@link ClassifierConfig#NUM_THREADS_CALIBRATE} until the backend has started.
+     */
+    public int getNumThreads() {
+        return mNumThreads;
+    }
+
+    /**
+     * @return the number of sessions running inferences in parallel.
+     */
+    public int getPoolSize() {
+        return mExecutor.getCorePoolSize();
+    }
+
+    /**
+     * @return a snapshot of the activity of every session of the pool, empty until the
+     * backends have started.
+     */
+    public List<SessionStats> getSessionStats() {
+        Slot[] slots = mSlots;
+        if (slots == null) {
+            return Collections.emptyList();
+        }
+        long now = System.nanoTime();
+        List<SessionStats> stats = new ArrayList<>(slots.length);
+        for (Slot slot : slots) {
+            stats.add(new SessionStats(slot.mIndex, slot.mRuns, slot.mImages,
+                    slot.mBusyNanos, now - slot.mStartNanos));
+        }
+        return stats;
+    }
+
+    /**
+     * @return {@code true} once the backends have been started and warmed up, or have failed
+     * to start. Requests submitted before are queued until then.
+     */
+    public boolean isReady() {
+        return mStarted.getCount() == 0;
+    }
+
+    /**
+     * @return {@code true} if the backends failed to start, in which case every request
+     * fails.
+     */
+    public boolean hasFailed() {
+        Slot[] slots = mSlots;
+        return slots != null && slots.length == 0;
+    }
+
+    /**
+     * Wait until the engine is {@link #isReady() ready}.
+     *
+     * @return {@code true} if it is, {@code false} if the timeout expired first.
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return mStarted.await(timeout, unit);
+    }
+
+    /**
+     * @return the number of requests submitted whose results have not been delivered yet.
+     */
+    public int getInFlightCount() {
+        return mInFlight.get();
+    }
+
+    /**
+     * @return {@code true} if no request is queued, running or waiting for delivery.
+     */
+    public boolean isIdle() {
+        return mInFlight.get() == 0;
+    }
+
+    /**
+     * Stop accepting new requests. Requests already queued still run, and the backends
+     * are closed on a worker thread once they are done.
+     */
+    public void close() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Stop accepting new requests like {@link #close()}, and run a task once the queued
+     * requests have run and the backends are closed. Their results may still be on their way
+     * through the callback executor at that point.
+     *
+     * @param onTerminated run on the worker thread that finished last, or on the calling
+     *                     thread if the engine is already closed.
+     */
+    public void close(Runnable onTerminated) {
+        mOnTerminated.set(onTerminated);
+        mExecutor.shutdown();
+        if (mTerminated) {
+            // Terminated before the task was set
+            runOnTerminated();
+        }
+    }
+
+    private void runOnTerminated() {
+        Runnable task = mOnTerminated.getAndSet(null);
+        if (task != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Take the oldest pending request, along with as many others as the batch holds, and
+     * run them.
+     */
+    private void drain() {
+        Request first = mPending.poll();
+        if (first == null) {
+            // Already taken along with the batch of another worker
+            return;
+        }
+        Slot slot = null;
+        int count = 1;
+        Exception error = null;
+        try {
+            slot = acquire();
+            slot.mBatch[0] = first;
+            count = gather(slot.mBatch);
+            run(slot, count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Image classification failed", e);
+            error = e;
+        }
+        if (error != null) {
+            Metrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.mFailures.add(count);
+            }
+        }
+        if (slot == null) {
+            complete(first, null, error);
+            return;
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                complete(slot.mBatch[i], error == null ? slot.mResults.get(i) : null, error);
+            }
+        } finally {
+            Arrays.fill(slot.mBatch, null);
+            slot.mResults.clear();
+            mFreeSlots.add(slot);
+        }
+    }
+
+    private Slot acquire() throws InterruptedException {
+        mStarted.await();
+        if (mSlots.length == 0) {
+            throw new IllegalStateException("The classifier failed to start");
+        }
+        // There are as many sessions as workers, one is always free
+        return mFreeSlots.take();
+    }
+
+    /**
+     * Fill the batch after its first request with pending ones, until it is full or the
+     * first request has waited for the batch timeout.
+     *
+     * @return the number of requests in the batch.
+     */
+    private int gather(Request[] batch) {
+        long deadline = batch[0].mSubmitNanos + mBatchTimeoutNanos;
+        int count = 1;
+        try {
+            while (count < batch.length) {
+                long remaining = deadline - System.nanoTime();
+                Request next = remaining > 0
+                        ? mPending.poll(remaining, TimeUnit.NANOSECONDS) : mPending.poll();
+                if (next == null) {
+                    break;
+                }
+                batch[count++] = next;
+            }
+        } catch (InterruptedException e) {
+            // Run what has been gathered so far
+            Thread.currentThread().interrupt();
+        }
+        return count;
+    }
+
+    private void run(Slot slot, int count) {
+        Metrics metrics = mMetrics;
+        long start = System.nanoTime();
+        try {
+            if (metrics != null) {
+                for (int i = 0; i < count; i++) {
+                    metrics.mQueueWait.record(start - slot.mBatch[i].mSubmitNanos);
+                }
+            }
+            // The session reuses its tensors, so only the worker holding it may touch it
+            byte[][] confidencePerLabel;
+            long inferenceStart;
+            if (slot.mBatch.length == 1 && slot.mBatch[0].mInput != null) {
+                // Already in the model format, run it without copying it into the session
+                inferenceStart = System.nanoTime();
+                confidencePerLabel = slot.mSession.run(slot.mBatch[0].mInput);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    slot.mBatch[i].load(slot.mSession, i);
+                }
+                inferenceStart = System.nanoTime();
+                if (metrics != null) {
+                    metrics.mTensorFill.record(inferenceStart - start);
+                }
+                confidencePerLabel = slot.mSession.run();
+            }
+            long topKStart = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                slot.mResults.add(recognize(slot, confidencePerLabel[i]));
+            }
+            if (metrics != null) {
+                metrics.mInference.record(topKStart - inferenceStart);
+                metrics.mTopK.recordSince(topKStart);
+                metrics.mImages.add(count);
+            }
+        } finally {
+            slot.mBusyNanos += System.nanoTime() - start;
+            slot.mRuns++;
+            slot.mImages += count;
+        }
+    }
+
+    private Collection<Recognition> recognize(Slot slot, byte[] confidencePerLabel) {
+        // Get the results with the highest confidence and map them to their labels
+        Collection<Recognition> results =
+                TensorFlowHelper.getBestResults(confidencePerLabel, mLabels, slot.mTopK);
+
+        ClassificationTracer tracer = mTracer;
+        if (tracer != null) {
+            tracer.onInference(confidencePerLabel, slot.mTopK, mLabels);
+        }
+        return results;
+    }
+
+    private void complete(Request request, Collection<Recognition> results, Throwable error) {
+        deliver(request.mCallback, results);
+        request.complete(results, error);
+    }
+
+    private void deliver(final Callback callback, final Collection<Recognition> results) {
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                // Done before the callback, so that it can submit the next request
+                mInFlight.decrementAndGet();
+                callback.onClassificationComplete(results);
+            }
+        };
+        if (mCallbackExecutor == null) {
+            delivery.run();
+            return;
+        }
+        try {
+            mCallbackExecutor.execute(delivery);
+        } catch (RejectedExecutionException e) {
+            // The receiving thread is gone, nobody is listening anymore
+            mInFlight.decrementAndGet();
+        }
+    }
+}
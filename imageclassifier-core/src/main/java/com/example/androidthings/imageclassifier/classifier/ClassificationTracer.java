@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.util.List;
+
+/**
+ * Diagnostics hook invoked by the {@link ClassificationEngine} after every inference. No
+ * tracer is installed by default, in which case tracing costs a single field read.
+ *
+ * Implementations run on the classifier worker threads, so they should be quick and must
+ * not keep references to the arrays they are given, which are reused for the next frame.
+ * With a pool of more than one session, they are called from several threads at once.
+ */
+public interface ClassificationTracer {
+    /**
+     * @param confidencePerLabel quantized score of every label for this inference.
+     * @param selection          the labels picked as results, best first.
+     * @param labels             labels matching the model outputs.
+     */
+    void onInference(byte[] confidencePerLabel, TopKSelector selection, List<String> labels);
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+/**
+ * Immutable settings of a {@link ClassificationEngine}. Use a {@link Builder} to create one.
+ */
+public class ClassifierConfig {
+    /** Number of results reported when not configured. */
+    public static final int DEFAULT_MAX_RESULTS = 3;
+    /** Number of sessions running in parallel when not configured. */
+    public static final int DEFAULT_POOL_SIZE = 1;
+    /** Number of images per inference when not configured. */
+    public static final int DEFAULT_BATCH_SIZE = 1;
+    /** Let the inference runtime pick its number of threads. */
+    public static final int NUM_THREADS_DEFAULT = -1;
+    /** Time the model with every thread count at startup and keep the fastest. */
+    public static final int NUM_THREADS_CALIBRATE = 0;
+
+    private final int mInputWidth;
+    private final int mInputHeight;
+    private final int mMaxResults;
+    private final float mMinConfidence;
+    private final int mNumThreads;
+    private final boolean mUseNnapi;
+    private final int mPoolSize;
+    private final int mBatchSize;
+    private final long mBatchTimeoutMillis;
+    private final int mWarmupRuns;
+
+    private ClassifierConfig(Builder builder) {
+        mInputWidth = builder.mInputWidth;
+        mInputHeight = builder.mInputHeight;
+        mMaxResults = builder.mMaxResults;
+        mMinConfidence = builder.mMinConfidence;
+        mNumThreads = builder.mNumThreads;
+        mUseNnapi = builder.mUseNnapi;
+        mPoolSize = builder.mPoolSize;
+        mBatchSize = builder.mBatchSize;
+        mBatchTimeoutMillis = builder.mBatchTimeoutMillis;
+        mWarmupRuns = builder.mWarmupRuns;
+    }
+
+    /** Width of the images expected by the model. */
+    public int getInputWidth() {
+        return mInputWidth;
+    }
+
+    /** Height of the images expected by the model. */
+    public int getInputHeight() {
+        return mInputHeight;
+    }
+
+    /** Maximum number of recognitions reported per image. */
+    public int getMaxResults() {
+        return mMaxResults;
+    }
+
+    /** Recognitions with a lower confidence, in [0, 1], are not reported. */
+    public float getMinConfidence() {
+        return mMinConfidence;
+    }
+
+    /**
+     * Number of threads a single inference may use, {@link #NUM_THREADS_DEFAULT} or
+     * {@link #NUM_THREADS_CALIBRATE}.
+     */
+    public int getNumThreads() {
+        return mNumThreads;
+    }
+
+    /**
+     * Whether inference is delegated to the Android Neural Networks API rather than run on
+     * the CPU. The thread count does not apply then.
+     */
+    public boolean getUseNnapi() {
+        return mUseNnapi;
+    }
+
+    /**
+     * Number of sessions, each with its own copy of the model tensors, running inferences in
+     * parallel. The model itself is shared.
+     */
+    public int getPoolSize() {
+        return mPoolSize;
+    }
+
+    /**
+     * Number of images run through the model at once. Larger batches amortize the cost of
+     * each inference over more images, at the price of latency.
+     */
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    /**
+     * How long the first image of a batch may wait for the others before the batch runs
+     * incomplete. With 0, a batch only takes the images that are already queued.
+     */
+    public long getBatchTimeoutMillis() {
+        return mBatchTimeoutMillis;
+    }
+
+    /**
+     * Number of inferences run on a blank image by every session before it takes requests,
+     * so that the first request does not pay for paging in the model, allocating the tensors
+     * and compiling the conversion loops.
+     */
+    public int getWarmupRuns() {
+        return mWarmupRuns;
+    }
+
+    public static class Builder {
+        private int mInputWidth;
+        private int mInputHeight;
+        private int mMaxResults = DEFAULT_MAX_RESULTS;
+        private float mMinConfidence;
+        private int mNumThreads = NUM_THREADS_DEFAULT;
+        private boolean mUseNnapi;
+        private int mPoolSize = DEFAULT_POOL_SIZE;
+        private int mBatchSize = DEFAULT_BATCH_SIZE;
+        private long mBatchTimeoutMillis;
+        private int mWarmupRuns;
+
+        public Builder setInputSize(int width, int height) {
+            mInputWidth = width;
+            mInputHeight = height;
+            return this;
+        }
+
+        public Builder setMaxResults(int maxResults) {
+            mMaxResults = maxResults;
+            return this;
+        }
+
+        public Builder setMinConfidence(float minConfidence) {
+            mMinConfidence = minConfidence;
+            return this;
+        }
+
+        public Builder setNumThreads(int numThreads) {
+            mNumThreads = numThreads;
+            return this;
+        }
+
+        public Builder setUseNnapi(boolean useNnapi) {
+            mUseNnapi = useNnapi;
+            return this;
+        }
+
+        public Builder setPoolSize(int poolSize) {
+            mPoolSize = poolSize;
+            return this;
+        }
+
+        public Builder setBatchSize(int batchSize) {
+            mBatchSize = batchSize;
+            return this;
+        }
+
+        public Builder setBatchTimeoutMillis(long batchTimeoutMillis) {
+            mBatchTimeoutMillis = batchTimeoutMillis;
+            return this;
+        }
+
+        public Builder setWarmupRuns(int warmupRuns) {
+            mWarmupRuns = warmupRuns;
+            return this;
+        }
+
+        public ClassifierConfig build() {
+            if (mInputWidth <= 0 || mInputHeight <= 0) {
+                throw new IllegalStateException("Input size must be set");
+            }
+            if (mMaxResults < 0) {
+                throw new IllegalStateException("maxResults must not be negative");
+            }
+            if (mNumThreads < NUM_THREADS_DEFAULT) {
+                throw new IllegalStateException("Invalid numThreads " + mNumThreads);
+            }
+            if (mPoolSize < 1) {
+                throw new IllegalStateException("poolSize must be positive");
+            }
+            if (mBatchSize < 1) {
+                throw new IllegalStateException("batchSize must be positive");
+            }
+            if (mBatchTimeoutMillis < 0) {
+                throw new IllegalStateException("batchTimeoutMillis must not be negative");
+            }
+            if (mWarmupRuns < 0) {
+                throw new IllegalStateException("warmupRuns must not be negative");
+            }
+            return new ClassifierConfig(this);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An inference backend together with input and output tensors sized for its model. The
+ * buffers are allocated once and reused for every frame, so running the session does not
+ * allocate.
+ *
+ * A session is not thread safe: it must only be used by one thread at a time.
+ */
+public class ClassifierSession {
+    private final InferenceBackend mBackend;
+    private final int mInputWidth;
+    private final int mInputHeight;
+
+    /** Image bytes in the format expected by the model, for the whole batch. */
+    private final ByteBuffer mImgData;
+    /** Views of {@link #mImgData} holding one image of the batch each. */
+    private final ByteBuffer[] mBatchImages;
+    /** Space for the inference results. */
+    private final byte[][] mConfidencePerLabel;
+
+    /**
+     * @param backend the model to run. Owned by the session and closed by {@link #close()}.
+     */
+    public ClassifierSession(InferenceBackend backend) {
+        int[] inputShape = backend.getInputShape();
+        int[] outputShape = backend.getOutputShape();
+        mBackend = backend;
+        mInputWidth = inputShape[InferenceBackend.INPUT_WIDTH];
+        mInputHeight = inputShape[InferenceBackend.INPUT_HEIGHT];
+        mImgData = ByteBuffer.allocateDirect(inputShape[InferenceBackend.INPUT_BATCH]
+                * mInputHeight * mInputWidth * inputShape[InferenceBackend.INPUT_CHANNELS]);
+        mImgData.order(ByteOrder.nativeOrder());
+        mConfidencePerLabel = new byte[outputShape[InferenceBackend.OUTPUT_BATCH]]
+                [outputShape[InferenceBackend.OUTPUT_LABELS]];
+
+        int batchSize = inputShape[InferenceBackend.INPUT_BATCH];
+        int imageBytes = mImgData.capacity() / batchSize;
+        mBatchImages = new ByteBuffer[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            mImgData.position(i * imageBytes).limit((i + 1) * imageBytes);
+            mBatchImages[i] = mImgData.slice().order(ByteOrder.nativeOrder());
+        }
+        mImgData.clear();
+    }
+
+    /**
+     * @return the width of the images expected by the model.
+     */
+    public int getInputWidth() {
+        return mInputWidth;
+    }
+
+    /**
+     * @return the height of the images expected by the model.
+     */
+    public int getInputHeight() {
+        return mInputHeight;
+    }
+
+    /**
+     * @return the number of images per run.
+     */
+    public int getBatchSize() {
+        return mBatchImages.length;
+    }
+
+    /**
+     * @return the number of model outputs per image.
+     */
+    public int getNumLabels() {
+        return mConfidencePerLabel[0].length;
+    }
+
+    /**
+     * Run the model on an image.
+     *
+     * @param argbPixels the image pixels as packed ARGB, of exactly the model input size.
+     * @return the quantized confidence per label. The array is owned by the session and
+     * overwritten by the next call.
+     * @throws IllegalStateException if the session runs batches of more than one image.
+     */
+    public byte[][] run(int[] argbPixels) {
+        checkSingleImage();
+        if (argbPixels.length != mInputWidth * mInputHeight) {
+            throw new IllegalArgumentException("Expected " + mInputWidth + "x" + mInputHeight
+                    + " pixels, got " + argbPixels.length);
+        }
+        // Read image data into buffer formatted for the TensorFlow model
+        TensorFlowHelper.convertPixelsToByteBuffer(argbPixels, argbPixels.length, mImgData);
+
+        // Run inference on the network with the image bytes in imgData as input,
+        // storing results on the confidencePerLabel array.
+        mBackend.run(mImgData, mConfidencePerLabel);
+        return mConfidencePerLabel;
+    }
+
+    /**
+     * Copy an image into the batch, for the next call to {@link #run()}.
+     *
+     * @param index      position in the batch.
+     * @param argbPixels the image pixels as packed ARGB, of exactly the model input size.
+     */
+    public void setInput(int index, int[] argbPixels) {
+        if (argbPixels.length != mInputWidth * mInputHeight) {
+            throw new IllegalArgumentException("Expected " + mInputWidth + "x" + mInputHeight
+                    + " pixels, got " + argbPixels.length);
+        }
+        TensorFlowHelper.convertPixelsToByteBuffer(argbPixels, argbPixels.length,
+                mBatchImages[index]);
+    }
+
+    /**
+     * Copy an image into the batch, for the next call to {@link #run()}.
+     *
+     * @param index   position in the batch.
+     * @param imgData packed RGB bytes of exactly the model input size. Its position is reset.
+     */
+    public void setInput(int index, ByteBuffer imgData) {
+        ByteBuffer image = mBatchImages[index];
+        if (imgData.capacity() != image.capacity()) {
+            throw new IllegalArgumentException("Expected " + image.capacity()
+                    + " input bytes, got " + imgData.capacity());
+        }
+        imgData.rewind();
+        image.clear();
+        image.put(imgData);
+        imgData.rewind();
+    }
+
+    /**
+     * Run the model on the images set with {@link #setInput}. Positions of the batch that
+     * were not set still hold their previous image, whose results should be ignored.
+     *
+     * @return the quantized confidence per label of every image of the batch. The array is
+     * owned by the session and overwritten by the next call.
+     */
+    public byte[][] run() {
+        mImgData.rewind();
+        mBackend.run(mImgData, mConfidencePerLabel);
+        return mConfidencePerLabel;
+    }
+
+    /**
+     * Run the model on an input that is already in the model format, bypassing the session
+     * input buffer.
+     *
+     * @param imgData a direct buffer in native order holding packed RGB bytes of exactly the
+     *                model input size.
+     * @return the quantized confidence per label. The array is owned by the session and
+     * overwritten by the next call.
+     * @throws IllegalStateException if the session runs batches of more than one image.
+     */
+    public byte[][] run(ByteBuffer imgData) {
+        checkSingleImage();
+        if (imgData.capacity() != mImgData.capacity()) {
+            throw new IllegalArgumentException("Expected " + mImgData.capacity()
+                    + " input bytes, got " + imgData.capacity());
+        }
+        imgData.rewind();
+        mBackend.run(imgData, mConfidencePerLabel);
+        return mConfidencePerLabel;
+    }
+
+    private void checkSingleImage() {
+        if (mBatchImages.length != 1) {
+            throw new IllegalStateException("Batches of " + mBatchImages.length
+                    + " images must be filled with setInput");
+        }
+    }
+
+    /**
+     * Release the backend.
+     */
+    public void close() {
+        mBackend.close();
+    }
+}
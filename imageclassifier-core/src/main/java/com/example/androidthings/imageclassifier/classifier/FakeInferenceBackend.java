@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A deterministic stand-in for the model, to exercise the threading, queueing and
+ * throughput of the classification pipeline on machines without TensorFlow Lite.
+ *
+ * The scores of an image are derived from a hash of a sample of its bytes: the same input
+ * always yields the same output, with a single clear winner over low noise. Hashing only a
+ * sample keeps the cost of the stand-in itself negligible next to the engine being measured.
+ * Every run takes at least the configured latency, either sleeping like an accelerator-bound
+ * model would or spinning to keep a core busy like a CPU-bound one.
+ */
+public class FakeInferenceBackend implements InferenceBackend {
+    private static final int DIM_PIXEL_SIZE = 3;
+    /** Distance between hashed bytes, prime so that it cycles through the channels. */
+    private static final int HASH_STRIDE = 61;
+
+    private final int[] mInputShape;
+    private final int[] mOutputShape;
+    private final int mImageBytes;
+    private final long mLatencyNanos;
+    private final boolean mBusyWait;
+
+    private volatile long mRunCount;
+    private volatile boolean mClosed;
+
+    /**
+     * Create a backend taking one image per run that sleeps for its latency.
+     */
+    public FakeInferenceBackend(int inputWidth, int inputHeight, int numLabels,
+                                long latencyNanos) {
+        this(1, inputWidth, inputHeight, numLabels, latencyNanos, false);
+    }
+
+    /**
+     * @param batchSize    number of images per run.
+     * @param inputWidth   width of the input images.
+     * @param inputHeight  height of the input images.
+     * @param numLabels    number of outputs per image.
+     * @param latencyNanos minimum duration of a run.
+     * @param busyWait     {@code true} to spin for the latency instead of sleeping.
+     */
+    public FakeInferenceBackend(int batchSize, int inputWidth, int inputHeight, int numLabels,
+                                long latencyNanos, boolean busyWait) {
+        if (batchSize < 1 || inputWidth < 1 || inputHeight < 1 || numLabels < 1) {
+            throw new IllegalArgumentException("Invalid shape " + batchSize + "x"
+                    + inputHeight + "x" + inputWidth + " -> " + numLabels);
+        }
+        if (latencyNanos < 0) {
+            throw new IllegalArgumentException("Negative latency " + latencyNanos);
+        }
+        mInputShape = new int[] {batchSize, inputHeight, inputWidth, DIM_PIXEL_SIZE};
+        mOutputShape = new int[] {batchSize, numLabels};
+        mImageBytes = inputWidth * inputHeight * DIM_PIXEL_SIZE;
+        mLatencyNanos = latencyNanos;
+        mBusyWait = busyWait;
+    }
+
+    @Override
+    public void run(ByteBuffer input, byte[][] output) {
+        if (mClosed) {
+            throw new IllegalStateException("Backend has been closed");
+        }
+        int batchSize = mInputShape[INPUT_BATCH];
+        if (input.capacity() != batchSize * mImageBytes) {
+            throw new IllegalArgumentException("Expected " + batchSize * mImageBytes
+                    + " input bytes, got " + input.capacity());
+        }
+        if (output.length != batchSize || output[0].length != mOutputShape[OUTPUT_LABELS]) {
+            throw new IllegalArgumentException("Output does not match shape "
+                    + batchSize + "x" + mOutputShape[OUTPUT_LABELS]);
+        }
+        long deadline = System.nanoTime() + mLatencyNanos;
+
+        for (int b = 0; b < batchSize; b++) {
+            fillScores(hash(input, b * mImageBytes, mImageBytes), output[b]);
+        }
+
+        if (mBusyWait) {
+            while (System.nanoTime() - deadline < 0) {
+                // spin
+            }
+        } else {
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+        mRunCount++;
+    }
+
+    @Override
+    public int[] getInputShape() {
+        return mInputShape.clone();
+    }
+
+    @Override
+    public int[] getOutputShape() {
+        return mOutputShape.clone();
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+    }
+
+    /**
+     * @return the number of runs completed so far.
+     */
+    public long getRunCount() {
+        return mRunCount;
+    }
+
+    /**
+     * @return {@code true} once {@link #close()} has been called.
+     */
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    private static int hash(ByteBuffer input, int offset, int length) {
+        // FNV-1a, with absolute gets to leave the buffer untouched
+        int h = 0x811c9dc5;
+        for (int i = offset, end = offset + length; i < end; i += HASH_STRIDE) {
+            h = (h ^ (input.get(i) & 0xff)) * 0x01000193;
+        }
+        return h;
+    }
+
+    private static void fillScores(int seed, byte[] scores) {
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = (byte) (mix(seed + i) & 0x0f);
+        }
+        int winner = (mix(seed) & 0x7fffffff) % scores.length;
+        scores[winner] = (byte) (0xc0 | (seed & 0x3f));
+    }
+
+    /** Finalization step of MurmurHash3, spreading every input bit over the result. */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
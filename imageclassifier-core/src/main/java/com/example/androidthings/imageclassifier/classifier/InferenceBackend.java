@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Something that can run the image classification model: the TensorFlow Lite interpreter
+ * on the device, or a stand-in when exercising the pipeline without a model.
+ *
+ * The input is a batch of packed RGB images, one byte per channel, of shape
+ * {@code [batch, height, width, channels]}. The output holds one quantized confidence per
+ * label for every image of the batch, of shape {@code [batch, labels]}.
+ *
+ * A backend is not expected to be thread safe: it must only be used by one thread at a time.
+ */
+public interface InferenceBackend {
+    /** Index of each dimension in the {@link #getInputShape() input shape}. */
+    int INPUT_BATCH = 0;
+    int INPUT_HEIGHT = 1;
+    int INPUT_WIDTH = 2;
+    int INPUT_CHANNELS = 3;
+
+    /** Index of each dimension in the {@link #getOutputShape() output shape}. */
+    int OUTPUT_BATCH = 0;
+    int OUTPUT_LABELS = 1;
+
+    /**
+     * Run the model once.
+     *
+     * @param input  a direct buffer in native order of exactly the input shape, positioned at
+     *               its start.
+     * @param output receives the confidence per label, of exactly the output shape.
+     */
+    void run(ByteBuffer input, byte[][] output);
+
+    /**
+     * @return the input shape as {@code [batch, height, width, channels]}. The array is a
+     * copy that the caller may keep.
+     */
+    int[] getInputShape();
+
+    /**
+     * @return the output shape as {@code [batch, labels]}. The array is a copy that the
+     * caller may keep.
+     */
+    int[] getOutputShape();
+
+    /**
+     * Release the resources held by the backend. It cannot be run anymore afterwards.
+     */
+    void close();
+}
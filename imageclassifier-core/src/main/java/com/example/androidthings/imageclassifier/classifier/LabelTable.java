@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Labels read from a compact binary table, usually memory-mapped, instead of one String per
+ * line of a text file. Only the labels actually looked up are decoded, once each, so that
+ * opening the table costs neither parsing nor heap for models with many classes.
+ *
+ * The table is big-endian and holds, in order:
+ * <ul>
+ * <li>the magic number {@code 'LBL1'},</li>
+ * <li>the number of labels {@code n},</li>
+ * <li>{@code n + 1} offsets of the labels in the blob, the last one being its length,</li>
+ * <li>the blob of the UTF-8 encoded labels.</li>
+ * </ul>
+ *
+ * Tables are written by {@link #write} or the {@link LabelTableCompiler}. Lookups are safe
+ * from several threads.
+ */
+public class LabelTable extends AbstractList<String> implements RandomAccess {
+    private static final int MAGIC = 0x4c424c31;
+    private static final int HEADER_BYTES = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mTable;
+    private final int mSize;
+    private final int mBlobStart;
+    /** Labels decoded so far. Racing lookups may both decode a label, which is harmless. */
+    private final String[] mDecoded;
+
+    private LabelTable(ByteBuffer table, int size) {
+        mTable = table;
+        mSize = size;
+        mBlobStart = HEADER_BYTES + (size + 1) * 4;
+        mDecoded = new String[size];
+    }
+
+    /**
+     * Read a table from a buffer, without copying it.
+     *
+     * @param table the table, from its position to its limit. It must not be modified
+     *              afterwards.
+     * @throws IllegalArgumentException if the buffer does not hold a valid table.
+     */
+    public static LabelTable wrap(ByteBuffer table) {
+        ByteBuffer buffer = table.slice();
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a label table");
+        }
+        int size = buffer.getInt(4);
+        long blobStart = HEADER_BYTES + (size + 1L) * 4;
+        if (size < 0 || blobStart > buffer.remaining()
+                || blobStart + buffer.getInt(HEADER_BYTES + size * 4) != buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated label table of " + size + " labels");
+        }
+        return new LabelTable(buffer, size);
+    }
+
+    /**
+     * Memory-map a table file.
+     */
+    public static LabelTable map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write the table of a list of labels.
+     *
+     * @param out receives the table. It is not closed.
+     */
+    public static void write(List<String> labels, OutputStream out) throws IOException {
+        byte[][] encoded = new byte[labels.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = labels.get(i).getBytes(UTF_8);
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(encoded.length);
+        int offset = 0;
+        data.writeInt(offset);
+        for (byte[] label : encoded) {
+            offset += label.length;
+            data.writeInt(offset);
+        }
+        for (byte[] label : encoded) {
+            data.write(label);
+        }
+        data.flush();
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Label " + index + " of " + mSize);
+        }
+        String label = mDecoded[index];
+        if (label == null) {
+            label = decode(index);
+            mDecoded[index] = label;
+        }
+        return label;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    private String decode(int index) {
+        int start = mTable.getInt(HEADER_BYTES + index * 4);
+        int end = mTable.getInt(HEADER_BYTES + (index + 1) * 4);
+        if (start < 0 || end < start || mBlobStart + end > mTable.limit()) {
+            throw new IllegalStateException("Corrupt label table at label " + index);
+        }
+        byte[] bytes = new byte[end - start];
+        // Absolute reads, the buffer position is shared by every thread
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = mTable.get(mBlobStart + start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+}
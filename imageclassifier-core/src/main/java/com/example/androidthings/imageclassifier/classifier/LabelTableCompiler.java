@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Build-time tool compiling a labels text file, one label per line, into a
+ * {@link LabelTable}.
+ *
+ * Usage: {@code LabelTableCompiler <labels.txt> <labels.bin>}
+ */
+public class LabelTableCompiler {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: LabelTableCompiler <labels.txt> <labels.bin>");
+            System.exit(2);
+        }
+        Path in = Paths.get(args[0]);
+        Path out = Paths.get(args[1]);
+        List<String> labels = TensorFlowHelper.readLabels(in);
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(out))) {
+            LabelTable.write(labels, os);
+        }
+        System.out.println("Compiled " + labels.size() + " labels into " + out);
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import com.example.androidthings.imageclassifier.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A set of named models, one of which classifies the images at any time. Switching to
+ * another model loads and warms it up on a background thread while the current one keeps
+ * serving requests, then swaps it in at once: requests submitted afterwards go to the new
+ * model, while those already queued finish on the old one, whose backends are closed once
+ * they have drained.
+ */
+public class ModelRegistry {
+    private static final String TAG = ModelRegistry.class.getSimpleName();
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    /**
+     * Creates the engine running a model, along with its labels and configuration.
+     */
+    public interface Loader {
+        /**
+         * Called on the loading thread. The engine does not have to be ready yet.
+         */
+        ClassificationEngine load() throws IOException;
+    }
+
+    /**
+     * Receives the outcome of {@link #activate(String, Listener)}.
+     */
+    public interface Listener {
+        /** The model is now serving new requests. Called on the callback executor. */
+        void onModelActivated(String name);
+
+        /** The model could not be loaded, the previous one stays active. */
+        void onModelFailed(String name, Exception error);
+    }
+
+    /**
+     * A request queued by {@link #classify}, along with the model running it, which may no
+     * longer be the active one by the time the results come.
+     */
+    public static class Classification implements Future<Collection<Recognition>> {
+        private final String mModel;
+        private final Future<Collection<Recognition>> mFuture;
+
+        Classification(String model, Future<Collection<Recognition>> future) {
+            mModel = model;
+            mFuture = future;
+        }
+
+        /**
+         * @return the name of the model producing the results.
+         */
+        public String getModel() {
+            return mModel;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return mFuture.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mFuture.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return mFuture.isDone();
+        }
+
+        @Override
+        public Collection<Recognition> get() throws InterruptedException, ExecutionException {
+            return mFuture.get();
+        }
+
+        @Override
+        public Collection<Recognition> get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return mFuture.get(timeout, unit);
+        }
+    }
+
+    /** The engine serving new requests, and the name of its model. */
+    private static class Active {
+        final String mName;
+        final ClassificationEngine mEngine;
+
+        Active(String name, ClassificationEngine engine) {
+            mName = name;
+            mEngine = engine;
+        }
+    }
+
+    private final Executor mCallbackExecutor;
+    private final ExecutorService mLoader;
+    /** Guarded by this */
+    private final Map<String, Loader> mLoaders = new LinkedHashMap<>();
+    /** Guarded by this for writes, read without locking on every request */
+    private volatile Active mActive;
+    /** Replaced or closed engines still finishing their requests, dropped once done */
+    private final List<ClassificationEngine> mRetired = new CopyOnWriteArrayList<>();
+    /** Released after the first activation, successful or not */
+    private final CountDownLatch mFirstActivation = new CountDownLatch(1);
+    /** Why the last activation failed while no model was active, null otherwise */
+    private volatile Exception mFailure;
+    private volatile ClassificationTracer mTracer;
+    private volatile MetricsRegistry mMetrics;
+    /** Written under this, read without locking on every request */
+    private volatile boolean mClosed;
+
+    /**
+     * @param callbackExecutor runs the {@link Listener} callbacks; {@code null} to call them
+     *                         directly on the loading thread.
+     */
+    public ModelRegistry(Executor callbackExecutor) {
+        mCallbackExecutor = callbackExecutor;
+        mLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Make a model available under the given name. It is only loaded once activated.
+     */
+    public synchronized void register(String name, Loader loader) {
+        mLoaders.put(name, loader);
+    }
+
+    /**
+     * @return the names of the registered models, in registration order.
+     */
+    public synchronized List<String> getModelNames() {
+        return new ArrayList<>(mLoaders.keySet());
+    }
+
+    /**
+     * @return the name of the model serving new requests, or {@code null} if none is yet.
+     */
+    public String getActiveModel() {
+        Active active = mActive;
+        return active != null ? active.mName : null;
+    }
+
+    /**
+     * Load a registered model in the background and swap it in once warmed up. Activations
+     * run one after the other, in the order they were requested.
+     *
+     * @param listener notified of the outcome, may be {@code null}.
+     * @return a {@link Future} completing after the swap, or after the failure.
+     * @throws IllegalArgumentException if no model is registered under this name.
+     * @throws RejectedExecutionException if the registry has been closed.
+     */
+    public synchronized Future<?> activate(final String name, final Listener listener) {
+        final Loader loader = mLoaders.get(name);
+        if (loader == null) {
+            throw new IllegalArgumentException("No model registered as " + name);
+        }
+        return mLoader.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load(name, loader, listener);
+                } finally {
+                    mFirstActivation.countDown();
+                }
+            }
+        });
+    }
+
+    private void load(final String name, Loader loader, final Listener listener) {
+        ClassificationEngine engine = null;
+        try {
+            long start = System.nanoTime();
+            engine = loader.load();
+            engine.setTracer(mTracer);
+            engine.setMetrics(mMetrics);
+            // Warm up before the swap, so that no request waits on the new model
+            while (!engine.awaitReady(1, TimeUnit.SECONDS)) {
+                LOG.fine("Still loading " + name);
+            }
+            if (engine.hasFailed()) {
+                throw new IOException("Backend failed to start");
+            }
+            Active previous;
+            synchronized (this) {
+                if (mClosed) {
+                    engine.close();
+                    return;
+                }
+                previous = mActive;
+                mActive = new Active(name, engine);
+                mFailure = null;
+            }
+            if (previous != null) {
+                retire(previous.mEngine);
+            }
+            LOG.info("Activated " + name + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            if (listener != null) {
+                deliver(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onModelActivated(name);
+                    }
+                });
+            }
+        } catch (final IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Unable to load " + name, e);
+            if (engine != null) {
+                engine.close();
+            }
+            synchronized (this) {
+                if (mActive == null) {
+                    // Nothing is serving requests, and nothing will until another activation
+                    mFailure = e;
+                }
+            }
+            if (listener != null) {
+                deliver(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onModelFailed(name, e);
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            // Closed while loading
+            if (engine != null) {
+                engine.close();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Close a replaced engine, keeping track of it until its queued requests have run and
+     * its backends are closed.
+     */
+    private void retire(final ClassificationEngine engine) {
+        mRetired.add(engine);
+        engine.close(new Runnable() {
+            @Override
+            public void run() {
+                mRetired.remove(engine);
+            }
+        });
+    }
+
+    /**
+     * @return the number of replaced engines still finishing their requests.
+     */
+    int getRetiredCount() {
+        return mRetired.size();
+    }
+
+    private void deliver(Runnable callback) {
+        if (mCallbackExecutor == null) {
+            callback.run();
+            return;
+        }
+        try {
+            mCallbackExecutor.execute(callback);
+        } catch (RejectedExecutionException e) {
+            // Nobody is listening anymore
+        }
+    }
+
+    /**
+     * Queue an image for classification by the active model.
+     *
+     * @see ClassificationEngine#classify(int[], ClassificationEngine.Callback)
+     * @return the queued request, with the name of the model running it.
+     * @throws IllegalStateException if no model has been activated yet.
+     * @throws RejectedExecutionException if the registry has been closed.
+     */
+    public Classification classify(int[] argbPixels, ClassificationEngine.Callback callback) {
+        while (true) {
+            Active active = active();
+            try {
+                return new Classification(active.mName,
+                        active.mEngine.classify(argbPixels, callback));
+            } catch (RejectedExecutionException e) {
+                retryIfSwapped(active, e);
+            }
+        }
+    }
+
+    /**
+     * Queue an input in the model format for classification by the active model.
+     *
+     * @see ClassificationEngine#classify(ByteBuffer, ClassificationEngine.Callback)
+     * @return the queued request, with the name of the model running it.
+     * @throws IllegalStateException if no model has been activated yet.
+     * @throws RejectedExecutionException if the registry has been closed.
+     */
+    public Classification classify(ByteBuffer input, ClassificationEngine.Callback callback) {
+        while (true) {
+            Active active = active();
+            try {
+                return new Classification(active.mName,
+                        active.mEngine.classify(input, callback));
+            } catch (RejectedExecutionException e) {
+                retryIfSwapped(active, e);
+            }
+        }
+    }
+
+    private Active active() {
+        Active active = mActive;
+        if (active == null) {
+            // Cleared by close() after setting the flag
+            if (mClosed) {
+                throw new RejectedExecutionException("Model registry closed");
+            }
+            throw new IllegalStateException("No model activated");
+        }
+        return active;
+    }
+
+    /**
+     * The engine may have been replaced and closed between reading it and submitting to it,
+     * in which case the request goes to its successor. Otherwise the registry is closed.
+     */
+    private void retryIfSwapped(Active active, RejectedExecutionException e) {
+        if (mActive == active) {
+            throw e;
+        }
+    }
+
+    /**
+     * Install a diagnostics hook on the active model and those activated later, or remove
+     * it with {@code null}.
+     */
+    public void setTracer(ClassificationTracer tracer) {
+        mTracer = tracer;
+        Active active = mActive;
+        if (active != null) {
+            active.mEngine.setTracer(tracer);
+        }
+    }
+
+    /**
+     * Record the stage latencies of the active model and those activated later into a
+     * registry, or stop recording with {@code null}. Every model records into the same
+     * metrics.
+     */
+    public void setMetrics(MetricsRegistry registry) {
+        mMetrics = registry;
+        Active active = mActive;
+        if (active != null) {
+            active.mEngine.setMetrics(registry);
+        }
+    }
+
+    /**
+     * @return the session activity of the active model, empty if there is none.
+     */
+    public List<SessionStats> getSessionStats() {
+        Active active = mActive;
+        return active != null
+                ? active.mEngine.getSessionStats() : Collections.<SessionStats>emptyList();
+    }
+
+    /**
+     * @return {@code true} once a model is serving requests.
+     */
+    public boolean isReady() {
+        return mActive != null;
+    }
+
+    /**
+     * @return why no model is serving requests: the error of the last activation, if it
+     * failed while no model was active. {@code null} once a model is active, or while the
+     * first one is still loading.
+     */
+    public Exception getFailure() {
+        return mFailure;
+    }
+
+    /**
+     * Wait for the first activation to complete.
+     *
+     * @return {@code true} if a model is active, {@code false} if the timeout expired first
+     * or the model failed to load, which {@link #getFailure()} tells apart.
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return mFirstActivation.await(timeout, unit) && isReady();
+    }
+
+    /**
+     * @return {@code true} if neither the active model nor those it replaced have requests
+     * left to complete.
+     */
+    public boolean isIdle() {
+        for (ClassificationEngine retired : mRetired) {
+            if (!retired.isIdle()) {
+                return false;
+            }
+        }
+        Active active = mActive;
+        return active == null || active.mEngine.isIdle();
+    }
+
+    /**
+     * Stop loading models and close the active one. Its queued requests still complete, and
+     * requests submitted afterwards are rejected.
+     */
+    public void close() {
+        Active active;
+        synchronized (this) {
+            mClosed = true;
+            active = mActive;
+            mActive = null;
+        }
+        mLoader.shutdownNow();
+        if (active != null) {
+            retire(active.mEngine);
+        }
+    }
+}
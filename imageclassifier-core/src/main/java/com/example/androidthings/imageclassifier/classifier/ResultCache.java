@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import com.example.androidthings.imageclassifier.ImageHash;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the results of the last images classified, keyed by their {@link ImageHash},
+ * so that an image that looks like one of them is not run through the model again.
+ *
+ * A lookup matches the closest entry whose hash differs by at most the configured number
+ * of bits. Entries expire after a fixed time, so that a slow change in the scene is
+ * eventually classified again, and the least recently matched one is evicted when the cache
+ * is full. The cache is small, so lookups simply compare the hash with every entry.
+ */
+public class ResultCache {
+
+    private static class CachedResult {
+        final Collection<Recognition> mResults;
+        final long mExpiryNanos;
+
+        CachedResult(Collection<Recognition> results, long expiryNanos) {
+            mResults = results;
+            mExpiryNanos = expiryNanos;
+        }
+    }
+
+    private final int mCapacity;
+    private final int mMaxDistance;
+    private final long mTtlNanos;
+    /** In access order, the least recently matched entry first */
+    private final LinkedHashMap<Long, CachedResult> mEntries;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+    private long mExpiredCount;
+
+    /**
+     * @param capacity    maximum number of results remembered.
+     * @param maxDistance maximum number of bits by which the hash of an image may differ from
+     *                    that of a cached one to reuse its results, 0 for an exact match.
+     * @param ttl         time after which cached results are no longer reused.
+     */
+    public ResultCache(int capacity, int maxDistance, long ttl, TimeUnit unit) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (maxDistance < 0 || maxDistance > Long.SIZE) {
+            throw new IllegalArgumentException("Invalid distance " + maxDistance);
+        }
+        mCapacity = capacity;
+        mMaxDistance = maxDistance;
+        mTtlNanos = unit.toNanos(ttl);
+        mEntries = new LinkedHashMap<Long, CachedResult>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedResult> eldest) {
+                if (size() > mCapacity) {
+                    mEvictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the results cached for the closest image within the distance, or {@code null}
+     * if there is none.
+     */
+    public synchronized Collection<Recognition> get(long hash) {
+        final long now = System.nanoTime();
+        Long bestKey = null;
+        int bestDistance = mMaxDistance + 1;
+        Iterator<Map.Entry<Long, CachedResult>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, CachedResult> entry = it.next();
+            if (now - entry.getValue().mExpiryNanos >= 0) {
+                it.remove();
+                mExpiredCount++;
+                continue;
+            }
+            int distance = ImageHash.distance(hash, entry.getKey());
+            if (distance < bestDistance) {
+                bestKey = entry.getKey();
+                bestDistance = distance;
+            }
+        }
+        if (bestKey == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        // Also moves it to the end of the eviction order
+        return mEntries.get(bestKey).mResults;
+    }
+
+    /**
+     * Remember the results of an image. They are handed out as is on later hits, so they must
+     * not be modified afterwards.
+     */
+    public synchronized void put(long hash, Collection<Recognition> results) {
+        mEntries.put(hash, new CachedResult(results, System.nanoTime() + mTtlNanos));
+    }
+
+    /**
+     * Forget every result, for instance because the model producing them has changed.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of entries removed to make room for newer ones.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return the number of entries removed because they outlived the time to live.
+     */
+    public synchronized long getExpiredCount() {
+        return mExpiredCount;
+    }
+}
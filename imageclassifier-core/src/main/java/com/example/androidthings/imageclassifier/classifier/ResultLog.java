@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The last results delivered, kept for diagnostics. One thread adds results, typically the
+ * one publishing them, and any thread may read them.
+ *
+ * Adding a result allocates nothing and takes no lock: entries are written into a fixed ring
+ * of slots, each with a sequence number telling readers whether it changed while they were
+ * copying it.
+ */
+public class ResultLog {
+    /**
+     * A result as read from the log.
+     */
+    public static class Entry {
+        private final long mTimeMillis;
+        private final String mModel;
+        private final boolean mCached;
+        private final Collection<Recognition> mResults;
+
+        Entry(long timeMillis, String model, boolean cached, Collection<Recognition> results) {
+            mTimeMillis = timeMillis;
+            mModel = model;
+            mCached = cached;
+            mResults = results;
+        }
+
+        /**
+         * @return the wall clock time the result was added, in milliseconds since the epoch.
+         */
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        public String getModel() {
+            return mModel;
+        }
+
+        /**
+         * @return {@code true} if the result was reused from an earlier image.
+         */
+        public boolean isCached() {
+            return mCached;
+        }
+
+        /**
+         * @return the recognitions, empty if the classification failed.
+         */
+        public Collection<Recognition> getResults() {
+            return mResults;
+        }
+    }
+
+    /**
+     * A position of the ring. Every field is volatile so that a reader seeing the same
+     * sequence before and after copying the others knows they belong together.
+     */
+    private static class Slot {
+        /** Sequence of the entry held, plus one; odd while it is being written */
+        volatile long mVersion;
+        volatile long mTimeMillis;
+        volatile String mModel;
+        volatile boolean mCached;
+        volatile Collection<Recognition> mResults;
+    }
+
+    private final Slot[] mSlots;
+    /** Number of entries ever added */
+    private volatile long mCount;
+
+    /**
+     * @param capacity number of results kept, older ones are overwritten.
+     */
+    public ResultLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        mSlots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mSlots[i] = new Slot();
+        }
+    }
+
+    public int getCapacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * Add a result, overwriting the oldest one once the log is full. Only one thread may
+     * call this method.
+     *
+     * @param results the recognitions, which must not be modified afterwards, or
+     *                {@code null} if the classification failed.
+     */
+    public void add(long timeMillis, String model, boolean cached,
+                    Collection<Recognition> results) {
+        final long sequence = mCount;
+        final Slot slot = mSlots[(int) (sequence % mSlots.length)];
+        slot.mVersion = 2 * sequence + 1;
+        slot.mTimeMillis = timeMillis;
+        slot.mModel = model;
+        slot.mCached = cached;
+        slot.mResults = results;
+        slot.mVersion = 2 * sequence + 2;
+        mCount = sequence + 1;
+    }
+
+    /**
+     * @return the results held, newest first. Results overwritten while they are being read
+     * are left out.
+     */
+    public List<Entry> getEntries() {
+        final long count = mCount;
+        final int size = (int) Math.min(count, mSlots.length);
+        List<Entry> entries = new ArrayList<>(size);
+        for (long sequence = count - 1; sequence >= count - size; sequence--) {
+            final Entry entry = read(mSlots[(int) (sequence % mSlots.length)], sequence);
+            if (entry == null) {
+                // Overwritten by a newer one, so are all the older ones
+                break;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * @return the entry of this sequence, or {@code null} if the slot has been overwritten
+     * since. Versions only grow, so a version unchanged after the copy means the copy is
+     * whole.
+     */
+    private static Entry read(Slot slot, long sequence) {
+        final long version = 2 * sequence + 2;
+        if (slot.mVersion != version) {
+            return null;
+        }
+        final long timeMillis = slot.mTimeMillis;
+        final String model = slot.mModel;
+        final boolean cached = slot.mCached;
+        final Collection<Recognition> results = slot.mResults;
+        if (slot.mVersion != version) {
+            return null;
+        }
+        return new Entry(timeMillis, model, cached,
+                results != null ? results : Collections.<Recognition>emptyList());
+    }
+
+    /**
+     * Append the results held, newest first, as a JSON object with a {@code results} array.
+     */
+    public void writeJson(StringBuilder out) {
+        out.append("{\"results\":[");
+        boolean firstEntry = true;
+        for (Entry entry : getEntries()) {
+            if (!firstEntry) {
+                out.append(',');
+            }
+            firstEntry = false;
+            out.append("{\"time\":").append(entry.getTimeMillis());
+            out.append(",\"model\":");
+            appendString(out, entry.getModel());
+            out.append(",\"cached\":").append(entry.isCached());
+            out.append(",\"recognitions\":[");
+            boolean firstResult = true;
+            for (Recognition recognition : entry.getResults()) {
+                if (!firstResult) {
+                    out.append(',');
+                }
+                firstResult = false;
+                out.append("{\"id\":");
+                appendString(out, recognition.getId());
+                out.append(",\"title\":");
+                appendString(out, recognition.getTitle());
+                out.append(",\"confidence\":").append(recognition.getConfidence()).append('}');
+            }
+            out.append("]}");
+        }
+        out.append("]}\n");
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
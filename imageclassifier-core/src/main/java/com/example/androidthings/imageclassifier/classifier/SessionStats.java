@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+/**
+ * Snapshot of the activity of one session of a {@link ClassificationEngine} pool.
+ */
+public class SessionStats {
+    private final int mIndex;
+    private final long mRuns;
+    private final long mImages;
+    private final long mBusyNanos;
+    private final long mElapsedNanos;
+
+    SessionStats(int index, long runs, long images, long busyNanos, long elapsedNanos) {
+        mIndex = index;
+        mRuns = runs;
+        mImages = images;
+        mBusyNanos = busyNanos;
+        mElapsedNanos = elapsedNanos;
+    }
+
+    /** Position of the session in the pool. */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /** Number of inferences run by the session. */
+    public long getRuns() {
+        return mRuns;
+    }
+
+    /** Number of images classified by the session, more than the runs with batches. */
+    public long getImages() {
+        return mImages;
+    }
+
+    /** Time spent running inferences and selecting their results. */
+    public long getBusyNanos() {
+        return mBusyNanos;
+    }
+
+    /** Time since the session was opened. */
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /** Fraction of its lifetime the session spent busy, in [0, 1]. */
+    public float getUtilization() {
+        return mElapsedNanos > 0 ? (float) mBusyNanos / mElapsedNanos : 0f;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d: %d runs, %d images, %.1f%% busy", mIndex, mRuns, mImages,
+                getUtilization() * 100f);
+    }
+}
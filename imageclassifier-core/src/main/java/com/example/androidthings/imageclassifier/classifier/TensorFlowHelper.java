@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Helper functions for the TensorFlow image classifier. They only depend on the JDK, the
+ * Android specific loading of assets is in the apps.
+ */
+public class TensorFlowHelper {
+
+    private static final int RESULTS_TO_SHOW = ClassifierConfig.DEFAULT_MAX_RESULTS;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Memory-map a model file.
+     */
+    public static MappedByteBuffer loadModelFile(Path modelFile) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(modelFile, StandardOpenOption.READ)) {
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+    }
+
+    /**
+     * Read a labels file, one label per line.
+     */
+    public static List<String> readLabels(Path labelsFile) throws IOException {
+        try (InputStream is = Files.newInputStream(labelsFile)) {
+            return readLabels(is);
+        }
+    }
+
+    /**
+     * Read labels, one per line, until the end of the stream. The stream is not closed.
+     */
+    public static List<String> readLabels(InputStream is) throws IOException {
+        ArrayList<String> result = new ArrayList<>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(is, UTF_8));
+        String line;
+        while ((line = br.readLine()) != null) {
+            result.add(line);
+        }
+        return result;
+    }
+
+    /**
+     * Find the best classifications.
+      */
+    public static Collection<Recognition> getBestResults(byte[][] labelProbArray,
+                                                         List<String> labelList) {
+        return getBestResults(labelProbArray[0], labelList,
+                new TopKSelector(RESULTS_TO_SHOW, 0f));
+    }
+
+    /**
+     * Find the best classifications, as picked by the given selector. Only the winners are
+     * turned into {@link Recognition} objects.
+     */
+    public static List<Recognition> getBestResults(byte[] confidencePerLabel,
+                                                   List<String> labelList,
+                                                   TopKSelector selector) {
+        int count = selector.select(confidencePerLabel, labelList.size());
+        List<Recognition> results = new ArrayList<>(count);
+        for (int rank = 0; rank < count; rank++) {
+            int i = selector.getIndex(rank);
+            results.add(new Recognition(String.valueOf(i), labelList.get(i),
+                    selector.getConfidence(rank)));
+        }
+        return results;
+    }
+
+    /**
+     * Writes ARGB pixels into a {@code ByteBuffer}, as the packed R, G, B bytes expected by
+     * the TensorFlow model.
+     */
+    public static void convertPixelsToByteBuffer(int[] intValues, int pixelCount,
+                                                 ByteBuffer imgData) {
+        if (imgData == null) {
+            return;
+        }
+        imgData.rewind();
+        for (int pixel = 0; pixel < pixelCount; ++pixel) {
+            final int val = intValues[pixel];
+            imgData.put((byte) ((val >> 16) & 0xFF));
+            imgData.put((byte) ((val >> 8) & 0xFF));
+            imgData.put((byte) (val & 0xFF));
+        }
+        imgData.rewind();
+    }
+}
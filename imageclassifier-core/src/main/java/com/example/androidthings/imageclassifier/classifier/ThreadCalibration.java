@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Startup measurement of the inference time at every thread count, to pick the fastest one
+ * on the board at hand rather than trusting the runtime default.
+ *
+ * Each thread count gets a fresh backend, a few untimed runs to warm it up, then timed runs
+ * of which the median is kept. A higher thread count is only preferred if it is clearly
+ * faster, since the threads it takes are also needed by the camera and the preprocessing.
+ */
+public class ThreadCalibration {
+    /** Untimed runs per thread count when not specified. */
+    public static final int DEFAULT_WARMUP_RUNS = 2;
+    /** Timed runs per thread count when not specified. */
+    public static final int DEFAULT_TIMED_RUNS = 5;
+
+    /** A thread count must be this much faster than a lower one to be chosen. */
+    private static final float MIN_SPEEDUP = 0.95f;
+
+    private final long[] mMedianNanos;
+    private final int mBestNumThreads;
+
+    private ThreadCalibration(long[] medianNanos, int bestNumThreads) {
+        mMedianNanos = medianNanos;
+        mBestNumThreads = bestNumThreads;
+    }
+
+    /**
+     * Time the model with 1 to {@code maxThreads} threads. This takes
+     * {@code maxThreads * (warmupRuns + timedRuns)} inferences, so it should not run on the
+     * UI thread.
+     *
+     * @param factory    creates the backends to measure, each one closed once timed.
+     * @param maxThreads highest thread count to try, usually the number of cores.
+     * @param warmupRuns untimed runs before measuring each thread count.
+     * @param timedRuns  timed runs per thread count.
+     */
+    public static ThreadCalibration run(BackendFactory factory, int maxThreads, int warmupRuns,
+                                        int timedRuns) {
+        if (maxThreads < 1 || warmupRuns < 0 || timedRuns < 1) {
+            throw new IllegalArgumentException("Invalid calibration of " + maxThreads
+                    + " threads with " + warmupRuns + "+" + timedRuns + " runs");
+        }
+        long[] medianNanos = new long[maxThreads];
+        long[] samples = new long[timedRuns];
+        ByteBuffer input = null;
+        byte[][] output = null;
+        int best = 1;
+        for (int numThreads = 1; numThreads <= maxThreads; numThreads++) {
+            InferenceBackend backend = factory.create(numThreads);
+            try {
+                if (input == null) {
+                    int[] inputShape = backend.getInputShape();
+                    int[] outputShape = backend.getOutputShape();
+                    input = ByteBuffer.allocateDirect(inputShape[InferenceBackend.INPUT_BATCH]
+                            * inputShape[InferenceBackend.INPUT_HEIGHT]
+                            * inputShape[InferenceBackend.INPUT_WIDTH]
+                            * inputShape[InferenceBackend.INPUT_CHANNELS]);
+                    input.order(ByteOrder.nativeOrder());
+                    output = new byte[outputShape[InferenceBackend.OUTPUT_BATCH]]
+                            [outputShape[InferenceBackend.OUTPUT_LABELS]];
+                }
+                for (int i = 0; i < warmupRuns; i++) {
+                    input.rewind();
+                    backend.run(input, output);
+                }
+                for (int i = 0; i < timedRuns; i++) {
+                    input.rewind();
+                    long start = System.nanoTime();
+                    backend.run(input, output);
+                    samples[i] = System.nanoTime() - start;
+                }
+            } finally {
+                backend.close();
+            }
+            Arrays.sort(samples);
+            medianNanos[numThreads - 1] = samples[timedRuns / 2];
+            if (medianNanos[numThreads - 1] < medianNanos[best - 1] * MIN_SPEEDUP) {
+                best = numThreads;
+            }
+        }
+        return new ThreadCalibration(medianNanos, best);
+    }
+
+    /**
+     * @return the thread count to use.
+     */
+    public int getBestNumThreads() {
+        return mBestNumThreads;
+    }
+
+    /**
+     * @return the highest thread count measured.
+     */
+    public int getMaxNumThreads() {
+        return mMedianNanos.length;
+    }
+
+    /**
+     * @return the median inference time measured with the given number of threads.
+     */
+    public long getMedianNanos(int numThreads) {
+        return mMedianNanos[numThreads - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Inference time per thread count:");
+        for (int i = 0; i < mMedianNanos.length; i++) {
+            sb.append(' ').append(i + 1).append('=')
+                    .append(mMedianNanos[i] / 1000000f).append("ms");
+        }
+        return sb.append(", using ").append(mBestNumThreads).toString();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import java.util.Arrays;
+
+/**
+ * Selects the K best labels out of the quantized uint8 output of the model.
+ *
+ * Since there are only 256 possible scores, the selection is a counting sort: one pass
+ * builds a histogram of the scores to find the lowest score that still makes it into the
+ * top K, and a second pass collects the indices of the winners. Nothing is allocated per
+ * call, so a selector is not thread safe and should be owned by a single worker thread.
+ */
+public class TopKSelector {
+    private static final int NUM_SCORES = 256;
+
+    private final int mMaxResults;
+    private final int mMinScore;
+    private final int[] mHistogram = new int[NUM_SCORES];
+    /** Label indices of the last selection, best first. */
+    private final int[] mIndices;
+    private final int[] mScores;
+    private int mSize;
+
+    /**
+     * @param maxResults    maximum number of labels to select.
+     * @param minConfidence labels with a lower confidence, in [0, 1], are never selected.
+     */
+    public TopKSelector(int maxResults, float minConfidence) {
+        if (maxResults < 0) {
+            throw new IllegalArgumentException("maxResults must not be negative: " + maxResults);
+        }
+        mMaxResults = maxResults;
+        mMinScore = Math.max(0, Math.min(NUM_SCORES, (int) Math.ceil(minConfidence * 255)));
+        mIndices = new int[maxResults];
+        mScores = new int[maxResults];
+    }
+
+    /**
+     * Select the best labels.
+     *
+     * @param scores quantized confidence per label.
+     * @param length number of labels to consider, starting at index 0.
+     * @return the number of selected labels, at most the configured maximum.
+     */
+    public int select(byte[] scores, int length) {
+        mSize = 0;
+        if (mMaxResults == 0 || mMinScore >= NUM_SCORES) {
+            return 0;
+        }
+        final int[] histogram = mHistogram;
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < length; i++) {
+            histogram[scores[i] & 0xff]++;
+        }
+
+        // Walk down from the best score until K labels are covered. Labels scoring above
+        // the cutoff are always taken, ties on the cutoff only fill the remaining slots.
+        int cutoff = mMinScore;
+        int covered = 0;
+        int tieSlots = Integer.MAX_VALUE;
+        for (int s = NUM_SCORES - 1; s >= mMinScore; s--) {
+            covered += histogram[s];
+            if (covered >= mMaxResults) {
+                cutoff = s;
+                tieSlots = mMaxResults - (covered - histogram[s]);
+                break;
+            }
+        }
+
+        final int[] indices = mIndices;
+        final int[] selected = mScores;
+        int size = 0;
+        for (int i = 0; i < length && size < mMaxResults; i++) {
+            final int score = scores[i] & 0xff;
+            if (score > cutoff || (score == cutoff && tieSlots-- > 0)) {
+                // Insertion sort, best first. Equal scores keep their label order.
+                int pos = size++;
+                while (pos > 0 && selected[pos - 1] < score) {
+                    indices[pos] = indices[pos - 1];
+                    selected[pos] = selected[pos - 1];
+                    pos--;
+                }
+                indices[pos] = i;
+                selected[pos] = score;
+            }
+        }
+        mSize = size;
+        return size;
+    }
+
+    /**
+     * @return the number of labels picked by the last {@link #select(byte[], int)}.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param rank position in the last selection, 0 being the best.
+     * @return the label index at that rank.
+     */
+    public int getIndex(int rank) {
+        if (rank < 0 || rank >= mSize) {
+            throw new IndexOutOfBoundsException("rank " + rank + ", size " + mSize);
+        }
+        return mIndices[rank];
+    }
+
+    /**
+     * @param rank position in the last selection, 0 being the best.
+     * @return the confidence, in [0, 1], of the label at that rank.
+     */
+    public float getConfidence(int rank) {
+        if (rank < 0 || rank >= mSize) {
+            throw new IndexOutOfBoundsException("rank " + rank + ", size " + mSize);
+        }
+        return mScores[rank] / 255.0f;
+    }
+
+    public int getMaxResults() {
+        return mMaxResults;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count that only goes up, such as the number of frames classified.
+ */
+public class Counter {
+    private final AtomicLong mValue = new AtomicLong();
+
+    Counter() {
+    }
+
+    public void increment() {
+        mValue.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        if (delta < 0) {
+            throw new IllegalArgumentException("A counter can not go down: " + delta);
+        }
+        mValue.addAndGet(delta);
+    }
+
+    public long get() {
+        return mValue.get();
+    }
+}
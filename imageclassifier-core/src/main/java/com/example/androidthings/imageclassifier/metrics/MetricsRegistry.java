@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Named counters, gauges and histograms of a process. Metrics are created on first use and
+ * shared by everyone asking for the same name, so components instrument themselves and the
+ * registry is read in one place, for instance to be logged or exported.
+ *
+ * Looking up a metric may allocate, so components should do it once and keep the metric.
+ * Recording into it never allocates or locks.
+ */
+public class MetricsRegistry {
+    /** Names usable as they are by common exporters. */
+    private static final Pattern NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    /**
+     * Receives every metric of the registry, by kind and in name order.
+     */
+    public interface Visitor {
+        void visitCounter(String name, long value);
+
+        void visitGauge(String name, long value);
+
+        /**
+         * @param histogram still being recorded into.
+         */
+        void visitHistogram(String name, Histogram histogram);
+    }
+
+    private final ConcurrentMap<String, Object> mMetrics = new ConcurrentHashMap<>();
+
+    /**
+     * @return the counter of this name, created if needed.
+     */
+    public Counter counter(String name) {
+        return get(name, Counter.class, new Counter());
+    }
+
+    /**
+     * Register a counter kept by the component being observed, read at collection time.
+     * The value must never go down.
+     */
+    public void counter(String name, Gauge source) {
+        register(name, new CounterSource(source));
+    }
+
+    /**
+     * Register a gauge, replacing any previous one of this name.
+     */
+    public void gauge(String name, Gauge gauge) {
+        register(name, gauge);
+    }
+
+    /**
+     * @return the histogram of this name, created if needed.
+     */
+    public Histogram histogram(String name) {
+        return get(name, Histogram.class, new Histogram());
+    }
+
+    /** A counter whose value is read from a gauge. */
+    private static class CounterSource {
+        final Gauge mSource;
+
+        CounterSource(Gauge source) {
+            mSource = source;
+        }
+    }
+
+    private <M> M get(String name, Class<M> kind, M created) {
+        Object metric = mMetrics.get(name);
+        if (metric == null) {
+            checkName(name);
+            metric = mMetrics.putIfAbsent(name, created);
+            if (metric == null) {
+                return created;
+            }
+        }
+        if (!kind.isInstance(metric)) {
+            throw new IllegalArgumentException(name + " is not a " + kind.getSimpleName());
+        }
+        return kind.cast(metric);
+    }
+
+    private void register(String name, Object metric) {
+        checkName(name);
+        Object previous = mMetrics.put(name, metric);
+        if (previous != null && kindOf(previous) != kindOf(metric)) {
+            mMetrics.put(name, previous);
+            throw new IllegalArgumentException(name + " is already a " + kindOf(previous));
+        }
+    }
+
+    private static String kindOf(Object metric) {
+        if (metric instanceof Counter) {
+            return "counter";
+        } else if (metric instanceof CounterSource) {
+            return "counter source";
+        } else if (metric instanceof Gauge) {
+            return "gauge";
+        }
+        return "histogram";
+    }
+
+    private static void checkName(String name) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name " + name);
+        }
+    }
+
+    /**
+     * Read every metric. Gauges are called on the calling thread.
+     */
+    public void visit(Visitor visitor) {
+        for (Map.Entry<String, Object> entry : new TreeMap<>(mMetrics).entrySet()) {
+            final String name = entry.getKey();
+            final Object metric = entry.getValue();
+            if (metric instanceof Counter) {
+                visitor.visitCounter(name, ((Counter) metric).get());
+            } else if (metric instanceof CounterSource) {
+                visitor.visitCounter(name, ((CounterSource) metric).mSource.getValue());
+            } else if (metric instanceof Gauge) {
+                visitor.visitGauge(name, ((Gauge) metric).getValue());
+            } else {
+                visitor.visitHistogram(name, (Histogram) metric);
+            }
+        }
+    }
+
+    /**
+     * @return every metric on a line of its own, histograms of durations in milliseconds.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        visit(new Visitor() {
+            @Override
+            public void visitCounter(String name, long value) {
+                sb.append(name).append(' ').append(value).append('\n');
+            }
+
+            @Override
+            public void visitGauge(String name, long value) {
+                sb.append(name).append(' ').append(value).append('\n');
+            }
+
+            @Override
+            public void visitHistogram(String name, Histogram histogram) {
+                sb.append(String.format("%s count %d, p50 %.2fms, p90 %.2fms, p99 %.2fms, "
+                                + "max %.2fms\n", name, histogram.getCount(),
+                        millis(histogram.getPercentile(0.5)),
+                        millis(histogram.getPercentile(0.9)),
+                        millis(histogram.getPercentile(0.99)), millis(histogram.getMax())));
+            }
+        });
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
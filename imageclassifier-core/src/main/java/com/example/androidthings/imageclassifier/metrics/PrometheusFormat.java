@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.metrics;
+
+/**
+ * Writes a {@link MetricsRegistry} in the Prometheus text exposition format, so that a
+ * scraper or a plain {@code curl} can read it.
+ *
+ * Counters get the conventional {@code _total} suffix. Histograms are taken to hold
+ * durations in nanoseconds, and are exported in seconds with the {@code _seconds} suffix.
+ * Only the bucket boundaries falling on powers of two between about a microsecond and half
+ * a minute are exported, so the buckets stay exact and a scrape stays small.
+ */
+public final class PrometheusFormat {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Exported bucket boundaries, from 2^10ns to 2^35ns */
+    private static final long MIN_BOUND = 1L << 10;
+    private static final long MAX_BOUND = 1L << 35;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private PrometheusFormat() {
+    }
+
+    /**
+     * Append every metric of the registry, in name order. Gauges are read on the calling
+     * thread.
+     */
+    public static void write(MetricsRegistry registry, final StringBuilder out) {
+        registry.visit(new MetricsRegistry.Visitor() {
+            @Override
+            public void visitCounter(String name, long value) {
+                if (!name.endsWith("_total")) {
+                    name += "_total";
+                }
+                out.append("# TYPE ").append(name).append(" counter\n");
+                out.append(name).append(' ').append(value).append('\n');
+            }
+
+            @Override
+            public void visitGauge(String name, long value) {
+                out.append("# TYPE ").append(name).append(" gauge\n");
+                out.append(name).append(' ').append(value).append('\n');
+            }
+
+            @Override
+            public void visitHistogram(String name, Histogram histogram) {
+                writeHistogram(name + "_seconds", histogram, out);
+            }
+        });
+    }
+
+    private static void writeHistogram(String name, Histogram histogram, StringBuilder out) {
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < Histogram.getBucketCount(); i++) {
+            cumulative += histogram.getBucketValue(i);
+            // Buckets hold whole nanoseconds, the last one below a power of two ends at it
+            final long bound = Histogram.getBucketUpperBound(i) + 1;
+            if (bound >= MIN_BOUND && bound <= MAX_BOUND && (bound & (bound - 1)) == 0) {
+                out.append(name).append("_bucket{le=\"").append(bound / NANOS_PER_SECOND)
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+        }
+        // Counted from the same reads as the buckets, so that they stay consistent
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(histogram.getSum() / NANOS_PER_SECOND)
+                .append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
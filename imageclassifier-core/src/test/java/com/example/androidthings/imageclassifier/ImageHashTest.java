@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class ImageHashTest {
+    private static final int SIZE = 64;
+    /** Keeps the shifted image away from clipping, which would change its structure. */
+    private static final int MIN_VALUE = 40;
+    private static final int MAX_VALUE = 200;
+    private static final int BRIGHTNESS_SHIFT = 30;
+
+    /**
+     * A diagonal gradient with random texture, offset by a brightness shift.
+     *
+     * @param mirrored {@code true} for the gradient running the other way.
+     */
+    private static ByteBuffer image(long seed, int shift, boolean mirrored) {
+        Random random = new Random(seed);
+        ByteBuffer rgb = ByteBuffer.allocateDirect(SIZE * SIZE * 3);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                for (int c = 0; c < 3; c++) {
+                    final int distance = mirrored ? 2 * SIZE - 2 - x - y : x + y;
+                    int value = MIN_VALUE + distance * (MAX_VALUE - MIN_VALUE) / (4 * SIZE)
+                            + random.nextInt((MAX_VALUE - MIN_VALUE) / 2);
+                    rgb.put((byte) (value + shift));
+                }
+            }
+        }
+        rgb.rewind();
+        return rgb;
+    }
+
+    @Test
+    public void differenceHashIgnoresBrightness() {
+        checkBrightnessShift(ImageHash.DIFFERENCE);
+    }
+
+    @Test
+    public void averageHashIgnoresBrightness() {
+        checkBrightnessShift(ImageHash.AVERAGE);
+    }
+
+    private static void checkBrightnessShift(int kind) {
+        ImageHash hash = new ImageHash(SIZE, SIZE, kind);
+        final long original = hash.compute(image(1, 0, false));
+
+        assertEquals(original, hash.compute(image(1, BRIGHTNESS_SHIFT, false)));
+        assertEquals(original, hash.compute(image(1, -BRIGHTNESS_SHIFT, false)));
+        assertTrue(ImageHash.distance(original, hash.compute(image(1, 0, true))) > 16);
+    }
+
+    @Test
+    public void positionIsIgnored() {
+        ImageHash hash = new ImageHash(SIZE, SIZE, ImageHash.DIFFERENCE);
+        ByteBuffer rgb = image(3, 0, false);
+        final long expected = hash.compute(rgb);
+        rgb.position(rgb.limit() / 2);
+
+        assertEquals(expected, hash.compute(rgb));
+    }
+
+    @Test
+    public void distanceCountsDifferingBits() {
+        assertEquals(0, ImageHash.distance(0x1234L, 0x1234L));
+        assertEquals(2, ImageHash.distance(0b0101L, 0b0110L));
+        assertEquals(64, ImageHash.distance(0L, -1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooSmallImage() {
+        new ImageHash(16, 16, ImageHash.DIFFERENCE);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+public class MotionGateTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    /** Padding filled with a value that shows up if the stride is ignored. */
+    private static final int ROW_STRIDE = WIDTH + 32;
+    private static final byte PADDING = (byte) 0xff;
+    /** Left edge of the center square seen by the gate. */
+    private static final int CENTER_X = (WIDTH - HEIGHT) / 2;
+    private static final int LUMA_THRESHOLD = 10;
+    private static final float AREA_THRESHOLD = 0.1f;
+    private static final long KEEP_ALIVE_SECONDS = 5;
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(33);
+    private static final int BACKGROUND = 100;
+
+    private MotionGate mGate;
+    private long mTimestamp;
+
+    @Before
+    public void setUp() {
+        mGate = new MotionGate(WIDTH, HEIGHT, LUMA_THRESHOLD, AREA_THRESHOLD,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /** A uniform frame, with an optional rectangle of another luminance. */
+    private static ByteBuffer frame(int luma, int x, int y, int width, int height, int patch) {
+        ByteBuffer plane = ByteBuffer.allocate(ROW_STRIDE * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < ROW_STRIDE; col++) {
+                byte value = col >= WIDTH ? PADDING : (byte) luma;
+                if (col >= x && col < x + width && row >= y && row < y + height) {
+                    value = (byte) patch;
+                }
+                plane.put(row * ROW_STRIDE + col, value);
+            }
+        }
+        return plane;
+    }
+
+    private static ByteBuffer frame(int luma) {
+        return frame(luma, 0, 0, 0, 0, luma);
+    }
+
+    private boolean accept(ByteBuffer plane) {
+        mTimestamp += FRAME_NANOS;
+        return mGate.accept(plane, ROW_STRIDE, mTimestamp);
+    }
+
+    @Test
+    public void firstFramePasses() {
+        assertTrue(accept(frame(BACKGROUND)));
+        assertEquals(1, mGate.getPassedCount());
+        assertEquals(1f, mGate.getLastChange(), 0f);
+    }
+
+    @Test
+    public void unchangedFrameIsSkipped() {
+        accept(frame(BACKGROUND));
+
+        assertFalse(accept(frame(BACKGROUND)));
+        assertEquals(0f, mGate.getLastChange(), 0f);
+        assertEquals(1, mGate.getSkippedCount());
+    }
+
+    @Test
+    public void largeChangePasses() {
+        accept(frame(BACKGROUND));
+
+        // A quarter of the center square
+        assertTrue(accept(frame(BACKGROUND, CENTER_X, 0, HEIGHT / 2, HEIGHT / 2, 200)));
+        assertEquals(0.25f, mGate.getLastChange(), 0.02f);
+        // The background is now the changed frame
+        assertFalse(accept(frame(BACKGROUND, CENTER_X, 0, HEIGHT / 2, HEIGHT / 2, 200)));
+        assertEquals(2, mGate.getPassedCount());
+        assertEquals(0, mGate.getKeepAliveCount());
+    }
+
+    @Test
+    public void changeBelowThresholdsIsSkipped() {
+        accept(frame(BACKGROUND));
+
+        // Too small an area
+        assertFalse(accept(frame(BACKGROUND, CENTER_X, 0, 16, 16, 200)));
+        assertTrue(mGate.getLastChange() > 0);
+        // Too small a difference
+        assertFalse(accept(frame(BACKGROUND + LUMA_THRESHOLD / 2)));
+        // Outside of the center square
+        assertFalse(accept(frame(BACKGROUND, 0, 0, CENTER_X, HEIGHT, 0)));
+        assertEquals(3, mGate.getSkippedCount());
+    }
+
+    @Test
+    public void keepAlivePassesStillFrames() {
+        accept(frame(BACKGROUND));
+        assertFalse(accept(frame(BACKGROUND)));
+
+        mTimestamp += TimeUnit.SECONDS.toNanos(KEEP_ALIVE_SECONDS);
+        assertTrue(accept(frame(BACKGROUND)));
+        assertEquals(1, mGate.getKeepAliveCount());
+        assertFalse(accept(frame(BACKGROUND)));
+    }
+
+    @Test
+    public void backgroundFollowsSlowChanges() {
+        final int step = LUMA_THRESHOLD - 1;
+        // Two steps at once are too large a change
+        MotionGate fresh = new MotionGate(WIDTH, HEIGHT, LUMA_THRESHOLD, AREA_THRESHOLD,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        fresh.accept(frame(BACKGROUND), ROW_STRIDE, 0);
+        assertTrue(fresh.accept(frame(BACKGROUND + 2 * step), ROW_STRIDE, FRAME_NANOS));
+
+        // But not once the skipped frames of the first step have moved the background
+        accept(frame(BACKGROUND));
+        for (int i = 0; i < 50; i++) {
+            assertFalse(accept(frame(BACKGROUND + step)));
+        }
+        assertFalse(accept(frame(BACKGROUND + 2 * step)));
+    }
+
+    @Test
+    public void resetPassesNextFrame() {
+        accept(frame(BACKGROUND));
+        mGate.reset();
+
+        assertTrue(accept(frame(BACKGROUND)));
+        assertEquals(2, mGate.getPassedCount());
+        assertEquals(0, mGate.getKeepAliveCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooSmallFrame() {
+        new MotionGate(320, 32, LUMA_THRESHOLD, AREA_THRESHOLD, 1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PipelineTest {
+    private static final int STRESS_ITEMS = 100000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private Pipeline<Integer> mPipeline = new Pipeline<>("test");
+
+    /** Passes items on unchanged, counting the discarded ones. */
+    private static class Forward implements Pipeline.Processor<Integer, Integer> {
+        final AtomicIntegerArray mDiscarded;
+
+        Forward(AtomicIntegerArray discarded) {
+            mDiscarded = discarded;
+        }
+
+        @Override
+        public Integer process(Integer input) throws Exception {
+            return input;
+        }
+
+        @Override
+        public void discard(Integer input) {
+            mDiscarded.incrementAndGet(input);
+        }
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mPipeline.stop(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void stagesKeepOrderUnderBackPressure() throws Exception {
+        final AtomicIntegerArray discarded = new AtomicIntegerArray(STRESS_ITEMS);
+        final AtomicReference<String> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        // Short queues, so that stages keep waiting for input and for room
+        mPipeline.begin("first", 2, new Forward(discarded))
+                .then("second", 1, new Forward(discarded))
+                .then("last", 1, new Forward(discarded) {
+                    private int mExpected;
+
+                    @Override
+                    public Integer process(Integer input) {
+                        if (input != mExpected++ && error.get() == null) {
+                            error.set("Expected " + (mExpected - 1) + ", got " + input);
+                        }
+                        if (mExpected == STRESS_ITEMS) {
+                            done.countDown();
+                        }
+                        return input;
+                    }
+                });
+        mPipeline.start();
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        for (int i = 0; i < STRESS_ITEMS; i++) {
+            while (!mPipeline.offer(i) && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+        }
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(error.get());
+        awaitIdle();
+        for (int i = 0; i < STRESS_ITEMS; i++) {
+            assertEquals(0, discarded.get(i));
+        }
+        List<StageStats> stats = mPipeline.getStats();
+        for (StageStats stage : stats) {
+            assertEquals(STRESS_ITEMS, stage.getProcessedCount());
+        }
+    }
+
+    @Test
+    public void offerFailsWhenFirstQueueIsFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicIntegerArray discarded = new AtomicIntegerArray(8);
+        mPipeline.begin("blocked", 2, new Forward(discarded) {
+            @Override
+            public Integer process(Integer input) throws Exception {
+                started.countDown();
+                release.await();
+                return input;
+            }
+        });
+        mPipeline.start();
+
+        assertTrue(mPipeline.offer(0));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, mPipeline.getRemainingCapacity());
+        assertTrue(mPipeline.offer(1));
+        assertTrue(mPipeline.offer(2));
+        assertEquals(0, mPipeline.getRemainingCapacity());
+        assertFalse(mPipeline.offer(3));
+        assertEquals(3, mPipeline.getInFlightCount());
+
+        release.countDown();
+        awaitIdle();
+        assertEquals(2, mPipeline.getRemainingCapacity());
+    }
+
+    @Test
+    public void failedAndDroppedItemsLeaveThePipeline() throws Exception {
+        final AtomicIntegerArray discarded = new AtomicIntegerArray(3);
+        mPipeline.begin("filter", 4, new Forward(discarded) {
+            @Override
+            public Integer process(Integer input) throws Exception {
+                if (input == 1) {
+                    throw new Exception("failed");
+                }
+                // Dropped items are released by the processor itself
+                return input == 2 ? null : input;
+            }
+        }).then("last", 4, new Forward(discarded));
+        mPipeline.start();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(mPipeline.offer(i));
+        }
+        awaitIdle();
+
+        StageStats filter = mPipeline.getStats().get(0);
+        assertEquals(3, filter.getProcessedCount());
+        assertEquals(1, filter.getFailedCount());
+        assertEquals(1, filter.getDroppedCount());
+        assertEquals(1, mPipeline.getStats().get(1).getProcessedCount());
+        assertEquals(0, discarded.get(0));
+        assertEquals(1, discarded.get(1));
+        assertEquals(0, discarded.get(2));
+    }
+
+    @Test
+    public void stopDiscardsQueuedItemsOnce() throws Exception {
+        final int items = 6;
+        final AtomicIntegerArray discarded = new AtomicIntegerArray(items);
+        final AtomicIntegerArray completed = new AtomicIntegerArray(items);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        // The last stage blocks on its first item, the rest queue up before it
+        mPipeline.begin("first", 2, new Forward(discarded))
+                .then("blocking", 2, new Forward(discarded) {
+                    @Override
+                    public Integer process(Integer input) throws Exception {
+                        blocked.countDown();
+                        new CountDownLatch(1).await();
+                        return input;
+                    }
+                })
+                .then("last", 2, new Forward(discarded) {
+                    @Override
+                    public Integer process(Integer input) {
+                        completed.incrementAndGet(input);
+                        return input;
+                    }
+                });
+        mPipeline.start();
+
+        assertTrue(mPipeline.offer(0));
+        assertTrue(blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 1; i < items; i++) {
+            assertTrue(mPipeline.offer(i));
+            // Let the first stage move it along, so that every queue and stage holds one
+            Thread.sleep(10);
+        }
+
+        assertTrue(mPipeline.stop(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < items; i++) {
+            assertEquals("item " + i, 0, completed.get(i));
+            assertEquals("item " + i, 1, discarded.get(i));
+        }
+        assertEquals(0, mPipeline.getInFlightCount());
+        assertFalse(mPipeline.offer(items));
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!mPipeline.isIdle() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(mPipeline.isIdle());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SpscQueueTest {
+    private static final int STRESS_ITEMS = 1000000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Test
+    public void pollsInOfferOrder() {
+        SpscQueue<Integer> queue = new SpscQueue<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+    }
+
+    @Test
+    public void offerFailsWhenFull() {
+        // Not a power of two, so the buffer is larger than the capacity
+        SpscQueue<Integer> queue = new SpscQueue<>(3);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+
+        assertFalse(queue.offer(4));
+        assertEquals(3, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertEquals(1, queue.remainingCapacity());
+        assertTrue(queue.offer(4));
+    }
+
+    @Test
+    public void pollReturnsNullWhenEmpty() {
+        SpscQueue<Integer> queue = new SpscQueue<>(2);
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+
+        queue.offer(1);
+        queue.poll();
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+        assertEquals(2, queue.remainingCapacity());
+    }
+
+    @Test
+    public void keepsOrderAcrossWrapAround() {
+        SpscQueue<Integer> queue = new SpscQueue<>(3);
+        int next = 0;
+        int expected = 0;
+        // Indices go around the buffer many times, with the queue at varying depths
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 1 + round % 3; i++) {
+                assertTrue(queue.offer(next++));
+            }
+            while (!queue.isEmpty()) {
+                assertEquals(Integer.valueOf(expected++), queue.poll());
+            }
+        }
+        assertEquals(next, expected);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectsNull() {
+        new SpscQueue<Integer>(1).offer(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new SpscQueue<Integer>(0);
+    }
+
+    @Test
+    public void producerAndConsumerThreadsKeepOrder() throws Exception {
+        final SpscQueue<Integer> queue = new SpscQueue<>(16);
+        final AtomicReference<String> error = new AtomicReference<>();
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int expected = 0;
+                while (expected < STRESS_ITEMS) {
+                    Integer item = queue.poll();
+                    if (item == null) {
+                        Thread.yield();
+                    } else if (item != expected++) {
+                        error.set("Expected " + (expected - 1) + ", got " + item);
+                        return;
+                    }
+                }
+            }
+        });
+        consumer.start();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        for (int i = 0; i < STRESS_ITEMS && consumer.isAlive(); i++) {
+            while (!queue.offer(i) && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+        }
+        consumer.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        assertNull(error.get());
+        assertFalse(consumer.isAlive());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StatusServerTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int TIMEOUT_MS = 10000;
+    /** Size of the request buffer of the server. */
+    private static final int MAX_REQUEST_BYTES = 8192;
+    /** Pause between the parts of a request, so that the server reads them separately. */
+    private static final long PART_DELAY_MS = 20;
+
+    private StatusServer mServer;
+    private final AtomicInteger mActions = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StatusServer(0);
+        mServer.get("/status", "text/plain", new StatusServer.Resource() {
+            @Override
+            public void write(StringBuilder body) {
+                body.append("running\n");
+            }
+        });
+        mServer.get("/broken", "text/plain", new StatusServer.Resource() {
+            @Override
+            public void write(StringBuilder body) {
+                throw new IllegalStateException("broken");
+            }
+        });
+        mServer.post("/classify", new Runnable() {
+            @Override
+            public void run() {
+                mActions.incrementAndGet();
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    /**
+     * Send a request in parts, then read the response until the server closes the connection.
+     */
+    private String exchange(String... parts) throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), mServer.getPort());
+        try {
+            socket.setSoTimeout(TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    Thread.sleep(PART_DELAY_MS);
+                }
+                out.write(parts[i].getBytes(UTF8));
+                out.flush();
+            }
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                response.write(buffer, 0, read);
+            }
+            return new String(response.toByteArray(), UTF8);
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void assertStatus(String status, String response) {
+        assertTrue(response, response.startsWith("HTTP/1.1 " + status + "\r\n"));
+    }
+
+    @Test
+    public void getServesResource() throws Exception {
+        final String response = exchange("GET /status HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertStatus("200 OK", response);
+        assertTrue(response.contains("Content-Type: text/plain\r\n"));
+        assertTrue(response.contains("Content-Length: 8\r\n"));
+        assertTrue(response.endsWith("\r\n\r\nrunning\n"));
+    }
+
+    @Test
+    public void queryIsIgnored() throws Exception {
+        assertStatus("200 OK", exchange("GET /status?verbose=1 HTTP/1.1\r\n\r\n"));
+    }
+
+    @Test
+    public void postRunsAction() throws Exception {
+        assertStatus("202 Accepted", exchange("POST /classify HTTP/1.1\r\n\r\n"));
+        assertEquals(1, mActions.get());
+    }
+
+    @Test
+    public void unknownPathIsNotFound() throws Exception {
+        assertStatus("404 Not Found", exchange("GET /missing HTTP/1.1\r\n\r\n"));
+    }
+
+    @Test
+    public void wrongMethodIsNotAllowed() throws Exception {
+        assertStatus("405 Method Not Allowed", exchange("POST /status HTTP/1.1\r\n\r\n"));
+        assertStatus("405 Method Not Allowed", exchange("GET /classify HTTP/1.1\r\n\r\n"));
+        assertEquals(0, mActions.get());
+    }
+
+    @Test
+    public void failingResourceIsServerError() throws Exception {
+        assertStatus("500 Internal Server Error", exchange("GET /broken HTTP/1.1\r\n\r\n"));
+    }
+
+    @Test
+    public void malformedRequestIsBadRequest() throws Exception {
+        assertStatus("400 Bad Request", exchange("GET\r\n\r\n"));
+        assertStatus("400 Bad Request",
+                exchange("POST /classify HTTP/1.1\r\nContent-Length: x\r\n\r\n"));
+    }
+
+    @Test
+    public void oversizedRequestIsRejected() throws Exception {
+        assertStatus("413 Payload Too Large", exchange(
+                "POST /classify HTTP/1.1\r\nContent-Length: 100000\r\n\r\n"));
+        // Headers that never end, filling the request buffer exactly: unread bytes left on
+        // the connection would reset it before the response is read
+        final String start = "GET /status HTTP/1.1\r\nX: ";
+        char[] header = new char[MAX_REQUEST_BYTES - start.length()];
+        Arrays.fill(header, 'a');
+        assertStatus("413 Payload Too Large", exchange(start + new String(header)));
+        assertEquals(0, mActions.get());
+    }
+
+    @Test
+    public void requestSplitAcrossReads() throws Exception {
+        assertStatus("200 OK", exchange("GE", "T /sta", "tus HTTP/1.1\r\n", "\r", "\n"));
+        // The action only runs once the whole body has arrived
+        assertStatus("202 Accepted", exchange(
+                "POST /classify HTTP/1.1\r\nContent-Length: 6\r\n\r\n", "abc", "def"));
+        assertEquals(1, mActions.get());
+    }
+}
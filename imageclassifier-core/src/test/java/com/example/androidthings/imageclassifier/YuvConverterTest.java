@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class YuvConverterTest {
+    private static final int SRC_WIDTH = 64;
+    private static final int SRC_HEIGHT = 48;
+    private static final int DST_SIZE = 20;
+    /** Padding filled with a value that shows up if a stride is ignored. */
+    private static final int ROW_PADDING = 24;
+    private static final byte PADDING = (byte) 0xaa;
+    /** Rounding difference allowed between the fixed point kernel and the reference. */
+    private static final int TOLERANCE = 2;
+
+    /**
+     * Synthetic YUV_420_888 planes, with logical sample values kept aside for the reference.
+     */
+    private static class Frame {
+        final int[][] mLuma = new int[SRC_HEIGHT][SRC_WIDTH];
+        final int[][] mCb = new int[SRC_HEIGHT / 2][SRC_WIDTH / 2];
+        final int[][] mCr = new int[SRC_HEIGHT / 2][SRC_WIDTH / 2];
+        final int mYRowStride = SRC_WIDTH + ROW_PADDING;
+        final int mUvPixelStride;
+        final int mUvRowStride;
+        final ByteBuffer mY;
+        final ByteBuffer mU;
+        final ByteBuffer mV;
+
+        /**
+         * @param uvPixelStride 1 for separate chroma planes, 2 for interleaved ones sharing
+         *                      their memory like the semi-planar camera formats.
+         */
+        Frame(long seed, int uvPixelStride) {
+            Random random = new Random(seed);
+            mUvPixelStride = uvPixelStride;
+            mUvRowStride = SRC_WIDTH / 2 * uvPixelStride + ROW_PADDING;
+
+            byte[] y = filled(mYRowStride * SRC_HEIGHT);
+            for (int row = 0; row < SRC_HEIGHT; row++) {
+                for (int col = 0; col < SRC_WIDTH; col++) {
+                    mLuma[row][col] = random.nextInt(256);
+                    y[row * mYRowStride + col] = (byte) mLuma[row][col];
+                }
+            }
+            mY = ByteBuffer.wrap(y);
+
+            if (uvPixelStride == 2) {
+                // V then U interleaved, each plane starting on its first sample
+                byte[] vu = filled(mUvRowStride * SRC_HEIGHT / 2 + 1);
+                fillChroma(random, vu, 1, vu, 0);
+                mU = ByteBuffer.wrap(vu, 1, vu.length - 1).slice();
+                mV = ByteBuffer.wrap(vu, 0, vu.length - 1).slice();
+            } else {
+                byte[] u = filled(mUvRowStride * SRC_HEIGHT / 2);
+                byte[] v = filled(mUvRowStride * SRC_HEIGHT / 2);
+                fillChroma(random, u, 0, v, 0);
+                mU = ByteBuffer.wrap(u);
+                mV = ByteBuffer.wrap(v);
+            }
+        }
+
+        private void fillChroma(Random random, byte[] u, int uOffset, byte[] v, int vOffset) {
+            for (int row = 0; row < SRC_HEIGHT / 2; row++) {
+                for (int col = 0; col < SRC_WIDTH / 2; col++) {
+                    final int index = row * mUvRowStride + col * mUvPixelStride;
+                    mCb[row][col] = random.nextInt(256);
+                    mCr[row][col] = random.nextInt(256);
+                    u[uOffset + index] = (byte) mCb[row][col];
+                    v[vOffset + index] = (byte) mCr[row][col];
+                }
+            }
+        }
+
+        private static byte[] filled(int length) {
+            byte[] bytes = new byte[length];
+            Arrays.fill(bytes, PADDING);
+            return bytes;
+        }
+    }
+
+    @Test
+    public void convertsPlanarFrame() {
+        checkAgainstReference(new Frame(1, 1));
+    }
+
+    @Test
+    public void convertsSemiPlanarFrame() {
+        checkAgainstReference(new Frame(2, 2));
+    }
+
+    @Test
+    public void grayStaysGray() {
+        Frame frame = new Frame(3, 2);
+        for (int row = 0; row < SRC_HEIGHT / 2; row++) {
+            for (int col = 0; col < SRC_WIDTH / 2; col++) {
+                final int index = row * frame.mUvRowStride + col * frame.mUvPixelStride;
+                frame.mU.put(index, (byte) 128);
+                frame.mV.put(index, (byte) 128);
+            }
+        }
+        ByteBuffer out = convert(frame);
+        for (int i = 0; i < DST_SIZE * DST_SIZE; i++) {
+            assertEquals(out.get(3 * i), out.get(3 * i + 1));
+            assertEquals(out.get(3 * i), out.get(3 * i + 2));
+        }
+    }
+
+    @Test
+    public void leavesSourcePositionsUntouched() {
+        Frame frame = new Frame(4, 1);
+        convert(frame);
+        assertEquals(0, frame.mY.position());
+        assertEquals(0, frame.mU.position());
+        assertEquals(0, frame.mV.position());
+    }
+
+    private static ByteBuffer convert(Frame frame) {
+        YuvConverter converter = new YuvConverter(SRC_WIDTH, SRC_HEIGHT, DST_SIZE, DST_SIZE);
+        ByteBuffer out = ByteBuffer.allocateDirect(DST_SIZE * DST_SIZE * 3);
+        converter.convert(frame.mY, frame.mYRowStride, frame.mU, frame.mV,
+                frame.mUvRowStride, frame.mUvPixelStride, out);
+        assertEquals(0, out.position());
+        return out;
+    }
+
+    private static void checkAgainstReference(Frame frame) {
+        ByteBuffer out = convert(frame);
+        // Nearest neighbor sampling of the center square
+        final int minDim = Math.min(SRC_WIDTH, SRC_HEIGHT);
+        final int offsetX = (SRC_WIDTH - minDim) / 2;
+        final int offsetY = (SRC_HEIGHT - minDim) / 2;
+        for (int y = 0; y < DST_SIZE; y++) {
+            final int srcY = offsetY + (int) ((y + 0.5) * minDim / DST_SIZE);
+            for (int x = 0; x < DST_SIZE; x++) {
+                final int srcX = offsetX + (int) ((x + 0.5) * minDim / DST_SIZE);
+                final double luma = frame.mLuma[srcY][srcX];
+                final double cb = frame.mCb[srcY / 2][srcX / 2] - 128;
+                final double cr = frame.mCr[srcY / 2][srcX / 2] - 128;
+                final int index = 3 * (y * DST_SIZE + x);
+                final String at = " at " + x + "," + y;
+                assertClose("red" + at, luma + 1.402 * cr, out.get(index));
+                assertClose("green" + at, luma - 0.344136 * cb - 0.714136 * cr,
+                        out.get(index + 1));
+                assertClose("blue" + at, luma + 1.772 * cb, out.get(index + 2));
+            }
+        }
+    }
+
+    private static void assertClose(String what, double expected, byte actual) {
+        final long reference = Math.round(Math.max(0, Math.min(255, expected)));
+        final int value = actual & 0xff;
+        assertTrue(what + ": expected " + reference + ", got " + value,
+                Math.abs(value - reference) <= TOLERANCE);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.androidthings.imageclassifier.metrics.MetricsRegistry;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Submits requests from several threads to an engine batching over a pool of sessions, and
+ * checks that every one of them completes with the results it would have had on its own.
+ */
+public class ClassificationEngineStressTest {
+    private static final int SIZE = 16;
+    private static final int NUM_LABELS = 100;
+    private static final int NUM_IMAGES = 16;
+    private static final int NUM_PRODUCERS = 4;
+    private static final int REQUESTS_PER_PRODUCER = 250;
+    private static final int POOL_SIZE = 3;
+    private static final int BATCH_SIZE = 4;
+    private static final long LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Test
+    public void concurrentRequestsMatchSingleRuns() throws Exception {
+        final List<String> labels = new ArrayList<>();
+        for (int i = 0; i < NUM_LABELS; i++) {
+            labels.add("label" + i);
+        }
+        final ByteBuffer[] images = new ByteBuffer[NUM_IMAGES];
+        Random random = new Random(1);
+        for (int i = 0; i < NUM_IMAGES; i++) {
+            byte[] pixels = new byte[SIZE * SIZE * 3];
+            random.nextBytes(pixels);
+            images[i] = ByteBuffer.allocateDirect(pixels.length).order(ByteOrder.nativeOrder());
+            images[i].put(pixels).rewind();
+        }
+
+        final AtomicInteger callbacks = new AtomicInteger();
+        final ClassificationEngine.Callback callback = new ClassificationEngine.Callback() {
+            @Override
+            public void onClassificationComplete(Collection<Recognition> results) {
+                callbacks.incrementAndGet();
+            }
+        };
+
+        // The backend is deterministic, so one image at a time gives the expected results
+        List<String> expected = new ArrayList<>(NUM_IMAGES);
+        ClassificationEngine baseline = new ClassificationEngine(
+                new FakeInferenceBackend(SIZE, SIZE, NUM_LABELS, 0), labels,
+                new ClassifierConfig.Builder().setInputSize(SIZE, SIZE).build(), null);
+        try {
+            for (ByteBuffer image : images) {
+                expected.add(describe(baseline.classify(image, callback)
+                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+            }
+        } finally {
+            baseline.close();
+        }
+
+        ClassifierConfig config = new ClassifierConfig.Builder()
+                .setInputSize(SIZE, SIZE)
+                .setNumThreads(1)
+                .setPoolSize(POOL_SIZE)
+                .setBatchSize(BATCH_SIZE)
+                .setBatchTimeoutMillis(1)
+                .build();
+        final ClassificationEngine engine = new ClassificationEngine(new BackendFactory() {
+            @Override
+            public InferenceBackend create(int numThreads) {
+                return new FakeInferenceBackend(BATCH_SIZE, SIZE, SIZE, NUM_LABELS,
+                        LATENCY_NANOS, false);
+            }
+        }, labels, config, null);
+        MetricsRegistry metrics = new MetricsRegistry();
+        engine.setMetrics(metrics);
+        callbacks.set(0);
+
+        ExecutorService producers = Executors.newFixedThreadPool(NUM_PRODUCERS);
+        List<Future<List<Future<Collection<Recognition>>>>> submitted = new ArrayList<>();
+        try {
+            for (int p = 0; p < NUM_PRODUCERS; p++) {
+                final int first = p;
+                submitted.add(producers.submit(
+                        new Callable<List<Future<Collection<Recognition>>>>() {
+                            @Override
+                            public List<Future<Collection<Recognition>>> call() {
+                                List<Future<Collection<Recognition>>> futures = new ArrayList<>();
+                                for (int i = 0; i < REQUESTS_PER_PRODUCER; i++) {
+                                    // Every request gets its own view of the shared image
+                                    ByteBuffer image = images[(first + i) % NUM_IMAGES]
+                                            .duplicate().order(ByteOrder.nativeOrder());
+                                    futures.add(engine.classify(image, callback));
+                                }
+                                return futures;
+                            }
+                        }));
+            }
+
+            for (int p = 0; p < NUM_PRODUCERS; p++) {
+                List<Future<Collection<Recognition>>> futures =
+                        submitted.get(p).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                for (int i = 0; i < REQUESTS_PER_PRODUCER; i++) {
+                    assertEquals("request " + i + " of producer " + p,
+                            expected.get((p + i) % NUM_IMAGES),
+                            describe(futures.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+                }
+            }
+        } finally {
+            producers.shutdownNow();
+            engine.close();
+        }
+
+        final int total = NUM_PRODUCERS * REQUESTS_PER_PRODUCER;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!engine.isIdle() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(engine.isIdle());
+        assertFalse(engine.hasFailed());
+        assertEquals(total, callbacks.get());
+        assertEquals(total, metrics.counter("classifier_images").get());
+        assertEquals(0, metrics.counter("classifier_failures").get());
+        long classified = 0;
+        for (SessionStats stats : engine.getSessionStats()) {
+            classified += stats.getImages();
+        }
+        assertEquals(total, classified);
+    }
+
+    private static String describe(Collection<Recognition> results) {
+        StringBuilder description = new StringBuilder();
+        for (Recognition recognition : results) {
+            description.append(recognition.getTitle()).append('=')
+                    .append(recognition.getConfidence()).append(' ');
+        }
+        return description.toString();
+    }
+}
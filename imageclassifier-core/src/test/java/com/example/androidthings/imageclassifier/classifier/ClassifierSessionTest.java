@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ClassifierSessionTest {
+    private static final int SIZE = 224;
+    private static final int NUM_LABELS = 1001;
+    private static final int WARMUP_RUNS = 2000;
+    private static final int RUNS = 1000;
+
+    private final com.sun.management.ThreadMXBean mThreads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private ClassifierSession mSession;
+    private int[] mPixels;
+    private ByteBuffer mInput;
+
+    @Before
+    public void setUp() {
+        assertTrue("Allocation counting is not supported by this JVM",
+                mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+        mSession = new ClassifierSession(new FakeInferenceBackend(SIZE, SIZE, NUM_LABELS, 0));
+        mPixels = new int[SIZE * SIZE];
+        for (int i = 0; i < mPixels.length; i++) {
+            mPixels[i] = i * 0x010203;
+        }
+        mInput = ByteBuffer.allocateDirect(SIZE * SIZE * 3).order(ByteOrder.nativeOrder());
+    }
+
+    @After
+    public void tearDown() {
+        mSession.close();
+    }
+
+    @Test
+    public void runPixelsDoesNotAllocate() {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            mSession.run(mPixels);
+        }
+        final long before = allocatedBytes();
+        for (int i = 0; i < RUNS; i++) {
+            mSession.run(mPixels);
+        }
+        assertEquals(0, allocatedBytes() - before);
+    }
+
+    @Test
+    public void runInputDoesNotAllocate() {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            mSession.run(mInput);
+        }
+        final long before = allocatedBytes();
+        for (int i = 0; i < RUNS; i++) {
+            mSession.run(mInput);
+        }
+        assertEquals(0, allocatedBytes() - before);
+    }
+
+    @Test
+    public void runReusesOutput() {
+        byte[][] first = mSession.run(mPixels);
+        assertTrue(first == mSession.run(mInput));
+        assertEquals(1, first.length);
+        assertEquals(NUM_LABELS, first[0].length);
+    }
+
+    private long allocatedBytes() {
+        return mThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class LabelTableTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /** Empty, ASCII, two and three byte characters, and a surrogate pair. */
+    private static final List<String> LABELS = Arrays.asList("background", "", "caf\u00e9",
+            "\u65e5\u672c", "dog \ud83d\udc36");
+    private static final int HEADER_BYTES = 8;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static byte[] table(List<String> labels) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LabelTable.write(labels, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTripsUtf8Labels() throws IOException {
+        LabelTable table = LabelTable.wrap(ByteBuffer.wrap(table(LABELS)));
+
+        assertEquals(LABELS, table);
+    }
+
+    @Test
+    public void wrapStartsAtPosition() throws IOException {
+        byte[] table = table(LABELS);
+        ByteBuffer buffer = ByteBuffer.allocate(table.length + 3);
+        buffer.put(new byte[3]).put(table);
+        buffer.position(3);
+
+        assertEquals(LABELS, LabelTable.wrap(buffer));
+    }
+
+    @Test
+    public void compilerOutputMatchesTextFile() throws IOException {
+        Path text = mFolder.newFile("labels.txt").toPath();
+        Files.write(text, LABELS, UTF_8);
+        Path compiled = mFolder.getRoot().toPath().resolve("out").resolve("labels.bin");
+
+        LabelTableCompiler.main(new String[] {text.toString(), compiled.toString()});
+
+        assertEquals(LABELS, LabelTable.map(compiled));
+        assertEquals(TensorFlowHelper.readLabels(text), LabelTable.map(compiled));
+    }
+
+    @Test
+    public void labelsAreDecodedOnce() throws IOException {
+        LabelTable table = LabelTable.wrap(ByteBuffer.wrap(table(LABELS)));
+
+        assertSame(table.get(2), table.get(2));
+    }
+
+    @Test
+    public void corruptLabelOnlyFailsWhenLookedUp() throws IOException {
+        byte[] bytes = table(LABELS);
+        // End offset of the second label before its start, the total length left valid
+        ByteBuffer.wrap(bytes).putInt(HEADER_BYTES + 2 * 4, -1);
+        LabelTable table = LabelTable.wrap(ByteBuffer.wrap(bytes));
+
+        assertEquals("background", table.get(0));
+        try {
+            table.get(1);
+            fail("Decoded a corrupt label");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals("\u65e5\u672c", table.get(3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexOutOfRange() throws IOException {
+        LabelTable.wrap(ByteBuffer.wrap(table(LABELS))).get(LABELS.size());
+    }
+
+    @Test
+    public void rejectsInvalidTables() throws IOException {
+        final byte[] valid = table(LABELS);
+
+        assertInvalid(new byte[4]);
+        assertInvalid("not a label table".getBytes(UTF_8));
+        // Truncated, or followed by garbage
+        assertInvalid(Arrays.copyOf(valid, valid.length - 1));
+        assertInvalid(Arrays.copyOf(valid, valid.length + 1));
+        // Header only, without the offsets
+        assertInvalid(Arrays.copyOf(valid, HEADER_BYTES));
+
+        byte[] negative = valid.clone();
+        ByteBuffer.wrap(negative).putInt(4, -1);
+        assertInvalid(negative);
+
+        byte[] huge = valid.clone();
+        ByteBuffer.wrap(huge).putInt(4, Integer.MAX_VALUE);
+        assertInvalid(huge);
+    }
+
+    private static void assertInvalid(byte[] table) {
+        try {
+            LabelTable.wrap(ByteBuffer.wrap(table));
+            fail("Accepted an invalid table of " + table.length + " bytes");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void emptyTable() throws IOException {
+        assertEquals(0, LabelTable.wrap(ByteBuffer.wrap(table(Arrays.<String>asList()))).size());
+    }
+}
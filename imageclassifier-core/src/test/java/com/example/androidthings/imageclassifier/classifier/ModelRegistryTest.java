@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ModelRegistryTest {
+    private static final int SIZE = 8;
+    private static final int NUM_LABELS = 10;
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final ClassificationEngine.Callback IGNORE =
+            new ClassificationEngine.Callback() {
+                @Override
+                public void onClassificationComplete(Collection<Recognition> results) {
+                }
+            };
+
+    private ModelRegistry mRegistry;
+
+    @Before
+    public void setUp() {
+        mRegistry = new ModelRegistry(null);
+        mRegistry.register("missing", new ModelRegistry.Loader() {
+            @Override
+            public ClassificationEngine load() throws IOException {
+                throw new FileNotFoundException("missing");
+            }
+        });
+        mRegistry.register("fake", new ModelRegistry.Loader() {
+            @Override
+            public ClassificationEngine load() {
+                List<String> labels = new ArrayList<>();
+                for (int i = 0; i < NUM_LABELS; i++) {
+                    labels.add("label" + i);
+                }
+                ClassifierConfig config = new ClassifierConfig.Builder()
+                        .setInputSize(SIZE, SIZE)
+                        .build();
+                return new ClassificationEngine(
+                        new FakeInferenceBackend(SIZE, SIZE, NUM_LABELS, 0), labels, config,
+                        null);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mRegistry.close();
+    }
+
+    @Test
+    public void failedFirstActivationIsReported() throws Exception {
+        mRegistry.activate("missing", null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertFalse(mRegistry.awaitReady(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(mRegistry.isReady());
+        assertTrue(mRegistry.getFailure() instanceof FileNotFoundException);
+    }
+
+    @Test
+    public void activationClearsFailure() throws Exception {
+        mRegistry.activate("missing", null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        mRegistry.activate("fake", null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue(mRegistry.isReady());
+        assertNull(mRegistry.getFailure());
+        assertEquals("fake", mRegistry.getActiveModel());
+    }
+
+    @Test
+    public void failureWhileActiveKeepsServing() throws Exception {
+        mRegistry.activate("fake", null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        mRegistry.activate("missing", null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertNull(mRegistry.getFailure());
+        assertEquals("fake", mRegistry.getActiveModel());
+    }
+
+    @Test
+    public void replacedEngineIsDroppedOnceDrained() throws Exception {
+        mRegistry.activate("fake", null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        mRegistry.classify(input(), IGNORE);
+        mRegistry.activate("fake", null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        awaitNoRetired();
+        assertTrue(mRegistry.isIdle());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void closedRegistryRejectsRequests() throws Exception {
+        mRegistry.activate("fake", null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        mRegistry.close();
+
+        awaitNoRetired();
+        mRegistry.classify(input(), IGNORE);
+    }
+
+    private static ByteBuffer input() {
+        return ByteBuffer.allocateDirect(SIZE * SIZE * 3).order(ByteOrder.nativeOrder());
+    }
+
+    private void awaitNoRetired() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (mRegistry.getRetiredCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, mRegistry.getRetiredCount());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class ResultCacheTest {
+    private static final long TTL_SECONDS = 60;
+
+    private static Collection<Recognition> results(String title) {
+        return Collections.singletonList(new Recognition("0", title, 1f));
+    }
+
+    @Test
+    public void matchesClosestHashWithinDistance() {
+        ResultCache cache = new ResultCache(4, 2, TTL_SECONDS, TimeUnit.SECONDS);
+        Collection<Recognition> near = results("near");
+        Collection<Recognition> far = results("far");
+        cache.put(0b1000L, near);
+        cache.put(0b0110L, far);
+
+        assertSame(near, cache.get(0b1000L));
+        // One bit away from the first, two from the second
+        assertSame(near, cache.get(0b1010L));
+        // Three bits away from the first, one from the second
+        assertSame(far, cache.get(0b0111L));
+        assertNull(cache.get(0b1111_0000L));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void exactMatchWithZeroDistance() {
+        ResultCache cache = new ResultCache(4, 0, TTL_SECONDS, TimeUnit.SECONDS);
+        cache.put(42L, results("exact"));
+
+        assertNull(cache.get(43L));
+        assertEquals("exact", cache.get(42L).iterator().next().getTitle());
+    }
+
+    @Test
+    public void expiredEntriesAreDropped() {
+        ResultCache cache = new ResultCache(4, 0, 0, TimeUnit.SECONDS);
+        cache.put(1L, results("expired"));
+
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getExpiredCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyMatched() {
+        ResultCache cache = new ResultCache(2, 0, TTL_SECONDS, TimeUnit.SECONDS);
+        cache.put(1L, results("first"));
+        cache.put(2L, results("second"));
+        // Matching the first makes the second the least recently used
+        cache.get(1L);
+        cache.put(3L, results("third"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(2L));
+        assertEquals("first", cache.get(1L).iterator().next().getTitle());
+        assertEquals("third", cache.get(3L).iterator().next().getTitle());
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        ResultCache cache = new ResultCache(4, 64, TTL_SECONDS, TimeUnit.SECONDS);
+        cache.put(1L, results("cleared"));
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get(1L));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ResultLogTest {
+    @Test
+    public void emptyLog() {
+        ResultLog log = new ResultLog(4);
+        StringBuilder json = new StringBuilder();
+        log.writeJson(json);
+
+        assertTrue(log.getEntries().isEmpty());
+        assertEquals("{\"results\":[]}\n", json.toString());
+    }
+
+    @Test
+    public void keepsNewestEntriesAcrossWrapAround() {
+        ResultLog log = new ResultLog(3);
+        for (int i = 0; i < 5; i++) {
+            log.add(i, "model" + i, i % 2 == 0, null);
+        }
+
+        List<ResultLog.Entry> entries = log.getEntries();
+        assertEquals(3, entries.size());
+        for (int i = 0; i < 3; i++) {
+            final ResultLog.Entry entry = entries.get(i);
+            assertEquals(4 - i, entry.getTimeMillis());
+            assertEquals("model" + (4 - i), entry.getModel());
+            assertEquals((4 - i) % 2 == 0, entry.isCached());
+            assertTrue(entry.getResults().isEmpty());
+        }
+    }
+
+    @Test
+    public void keepsResultsAsAdded() {
+        ResultLog log = new ResultLog(2);
+        List<Recognition> results = Collections.singletonList(new Recognition("1", "dog", 0.5f));
+        log.add(10, "model", false, results);
+
+        final ResultLog.Entry entry = log.getEntries().get(0);
+        assertEquals(results, entry.getResults());
+        assertFalse(entry.isCached());
+    }
+
+    @Test
+    public void writesEscapedJson() {
+        ResultLog log = new ResultLog(2);
+        log.add(1, "plain", true, null);
+        log.add(2, "quote\"back\\slash", false, Arrays.asList(
+                new Recognition("7", "line\nbreak\ttab", 0.75f),
+                new Recognition(null, "caf\u00e9", 0.25f)));
+        StringBuilder json = new StringBuilder();
+        log.writeJson(json);
+
+        assertEquals("{\"results\":["
+                + "{\"time\":2,\"model\":\"quote\\\"back\\\\slash\",\"cached\":false,"
+                + "\"recognitions\":["
+                + "{\"id\":\"7\",\"title\":\"line\\u000abreak\\u0009tab\",\"confidence\":0.75},"
+                + "{\"id\":null,\"title\":\"caf\u00e9\",\"confidence\":0.25}]},"
+                + "{\"time\":1,\"model\":\"plain\",\"cached\":true,\"recognitions\":[]}"
+                + "]}\n", json.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new ResultLog(0);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+    @Test
+    public void percentileIsWithinOneSubBucket() {
+        for (long value = 2; value > 0 && value < Long.MAX_VALUE / 2; value = value * 3 / 2 + 1) {
+            for (long delta = -1; delta <= 1; delta++) {
+                Histogram histogram = new Histogram();
+                histogram.record(value + delta);
+                histogram.record(Long.MAX_VALUE);
+                final long exact = value + delta;
+                final long estimate = histogram.getPercentile(0.5);
+                assertTrue(exact + " estimated as " + estimate,
+                        estimate >= exact && estimate - exact < exact / 8.0);
+            }
+        }
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        for (long value = 0; value < 8; value++) {
+            Histogram histogram = new Histogram();
+            histogram.record(value);
+            assertEquals(value, histogram.getPercentile(1));
+        }
+    }
+
+    @Test
+    public void percentileIsCappedByMaximum() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000);
+        assertEquals(1000, histogram.getPercentile(1));
+        assertEquals(1000, histogram.getMax());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PrometheusFormatTest {
+    private static String write(MetricsRegistry registry) {
+        StringBuilder out = new StringBuilder();
+        PrometheusFormat.write(registry, out);
+        return out.toString();
+    }
+
+    @Test
+    public void countersGetTotalSuffixOnce() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("frames").add(3);
+        registry.counter("drops_total").increment();
+        registry.counter("reads", new Gauge() {
+            @Override
+            public long getValue() {
+                return 7;
+            }
+        });
+
+        assertEquals("# TYPE drops_total counter\n"
+                + "drops_total 1\n"
+                + "# TYPE frames_total counter\n"
+                + "frames_total 3\n"
+                + "# TYPE reads_total counter\n"
+                + "reads_total 7\n", write(registry));
+    }
+
+    @Test
+    public void gaugesKeepTheirName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.gauge("queue_depth", new Gauge() {
+            @Override
+            public long getValue() {
+                return 2;
+            }
+        });
+
+        assertEquals("# TYPE queue_depth gauge\nqueue_depth 2\n", write(registry));
+    }
+
+    @Test
+    public void histogramsAreCumulativeInSeconds() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram histogram = registry.histogram("latency");
+        histogram.record(1500);
+        histogram.record(3000);
+        // Beyond the last exported bound
+        histogram.record(50000000000L);
+
+        final String text = write(registry);
+        assertTrue(text.startsWith("# TYPE latency_seconds histogram\n"));
+        assertTrue(text.contains(bucket(1L << 10, 0)));
+        assertTrue(text.contains(bucket(1L << 11, 1)));
+        assertTrue(text.contains(bucket(1L << 12, 2)));
+        assertTrue(text.contains(bucket(1L << 35, 2)));
+        assertTrue(text.contains("latency_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("latency_seconds_count 3\n"));
+        assertTrue(text.contains("latency_seconds_sum " + (50000004500L / 1e9) + "\n"));
+
+        // One bucket per power of two, never decreasing
+        long previous = 0;
+        int buckets = 0;
+        for (String line : text.split("\n")) {
+            if (line.startsWith("latency_seconds_bucket{le=\"") && !line.contains("+Inf")) {
+                final long count = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+                assertTrue(line, count >= previous);
+                previous = count;
+                buckets++;
+            }
+        }
+        assertEquals(26, buckets);
+    }
+
+    private static String bucket(long boundNanos, long count) {
+        return "latency_seconds_bucket{le=\"" + (boundNanos / 1e9) + "\"} " + count + "\n";
+    }
+}
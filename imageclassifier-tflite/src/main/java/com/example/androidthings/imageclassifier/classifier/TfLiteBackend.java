@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 The Android Things Samples Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.androidthings.imageclassifier.classifier;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+
+/**
+ * {@link InferenceBackend} running the model with the TensorFlow Lite interpreter.
+ *
+ * The shape of the tensors is read from the model, so that the engine can check it against
+ * its configuration and labels before the first run.
+ */
+public class TfLiteBackend implements InferenceBackend {
+    /**
+     * Creates interpreters of a memory-mapped model with the execution options of a
+     * {@link ClassifierConfig}. All of them share the same mapping.
+     */
+    public static class Factory implements BackendFactory {
+        private final MappedByteBuffer mModel;
+        private final ClassifierConfig mConfig;
+
+        /**
+         * @param model  the model, as loaded by {@link ModelAssets#loadModelFile}.
+         * @param config batch size and execution options.
+         */
+        public Factory(MappedByteBuffer model, ClassifierConfig config) {
+            mModel = model;
+            mConfig = config;
+        }
+
+        @Override
+        public InferenceBackend create(int numThreads) {
+            Interpreter.Options options = new Interpreter.Options()
+                    .setUseNNAPI(mConfig.getUseNnapi());
+            if (numThreads != ClassifierConfig.NUM_THREADS_DEFAULT) {
+                options.setNumThreads(numThreads);
+            }
+            return new TfLiteBackend(new Interpreter(mModel, options), mConfig.getBatchSize());
+        }
+    }
+
+    private static final int DIM_PIXEL_SIZE = 3;
+
+    private final Interpreter mInterpreter;
+    private final int[] mInputShape;
+    private final int[] mOutputShape;
+
+    /**
+     * @param interpreter the model to run. Owned by the backend and closed by {@link #close()}.
+     * @param batchSize   number of images per run. The model input is resized to it when it
+     *                    was exported for another batch size, which the model must support.
+     * @throws IllegalArgumentException if the model does not take packed RGB images or does
+     *                                  not output one confidence per label.
+     */
+    public TfLiteBackend(Interpreter interpreter, int batchSize) {
+        mInterpreter = interpreter;
+        int[] inputShape = interpreter.getInputTensor(0).shape();
+        int[] outputShape = interpreter.getOutputTensor(0).shape();
+        if (inputShape.length != 4 || inputShape[INPUT_CHANNELS] != DIM_PIXEL_SIZE
+                || outputShape.length != 2) {
+            throw new IllegalArgumentException("Unsupported model, taking "
+                    + Arrays.toString(inputShape) + " to " + Arrays.toString(outputShape));
+        }
+        if (inputShape[INPUT_BATCH] != batchSize) {
+            // The models are exported for single images
+            inputShape[INPUT_BATCH] = batchSize;
+            mInterpreter.resizeInput(0, inputShape);
+        }
+        mInputShape = mInterpreter.getInputTensor(0).shape();
+        // The output tensor is only resized along with the input on the next run
+        mOutputShape = new int[] {batchSize, outputShape[OUTPUT_LABELS]};
+    }
+
+    @Override
+    public void run(ByteBuffer input, byte[][] output) {
+        mInterpreter.run(input, output);
+    }
+
+    @Override
+    public int[] getInputShape() {
+        return mInputShape.clone();
+    }
+
+    @Override
+    public int[] getOutputShape() {
+        return mOutputShape.clone();
+    }
+
+    @Override
+    public void close() {
+        mInterpreter.close();
+    }
+}